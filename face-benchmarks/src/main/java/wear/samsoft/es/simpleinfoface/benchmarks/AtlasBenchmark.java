@@ -0,0 +1,220 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineMetrics;
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mide lo que cuesta pintar en cada frame los textos de la caratula (la fecha palabra a palabra
+ * y el porcentaje de bateria) con drawText frente a copiarlos de un atlas ya rasterizado, como
+ * hace AtlasGlifos. Aqui no hay Android, asi que se hace con Java2D: drawString hace lo mismo
+ * que drawText (dar forma al texto y rasterizar los glifos) y el brillo del BlurMaskFilter se
+ * imita pintando el texto en una capa, desenfocandola y componiendola. El atlas se construye
+ * una vez con el brillo y cada frame solo copia rectangulos enteros.
+ *
+ * texto es drawString sin brillo, textoBrillo es lo que hacia el onDraw original y atlas es
+ * lo que hace ahora. Java2D guarda los glifos ya rasterizados, asi que texto es poco mas que
+ * copiar glifos y puede salir por debajo del atlas, lo que ahorra el atlas es el brillo.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(jvmArgsAppend = "-Djava.awt.headless=true")
+public class AtlasBenchmark {
+
+    @Param({"texto", "textoBrillo", "atlas"})
+    public String modo;
+
+    //las palabras de un frame: "Sat 17 " en blanco, "Oct 2015" en cyan y la bateria
+    private static final String[] PALABRAS = {"Sat", "17", "Oct", "2015", "73%"};
+    private static final Color[] COLORES = {
+            Color.WHITE, Color.WHITE, Color.CYAN, Color.CYAN, Color.WHITE
+    };
+
+    //el radio del brillo de la fecha y el margen que le dejamos en el atlas, como AtlasGlifos
+    private static final int RADIO_BRILLO = 2;
+    private static final int MARGEN = 4;
+
+    private static final int TAMANIO = 320;
+
+    private BufferedImage mDestino;
+    private Graphics2D mCanvas;
+    private Font mFuente;
+    private ConvolveOp mDesenfoque;
+
+    //posicion de la linea base de cada palabra, colocadas como las coloca TextoFecha
+    private final float[] mX = new float[PALABRAS.length];
+    private final float[] mY = new float[PALABRAS.length];
+
+    //capa para el brillo, del tamanio de la palabra mas grande con su margen
+    private BufferedImage mCapa;
+    private BufferedImage mCapaBrillo;
+    private int mAscenso;
+
+    //el atlas con todas las palabras ya pintadas y el rectangulo de cada una
+    private BufferedImage mAtlas;
+    private final Rectangle[] mOrigen = new Rectangle[PALABRAS.length];
+
+    @Setup
+    public void preparar() {
+        mDestino = new BufferedImage(TAMANIO, TAMANIO, BufferedImage.TYPE_INT_ARGB);
+        mCanvas = mDestino.createGraphics();
+        mFuente = new Font(Font.SANS_SERIF, Font.PLAIN, 18);
+        mDesenfoque = new ConvolveOp(desenfoque(RADIO_BRILLO), ConvolveOp.EDGE_ZERO_FILL, null);
+        suavizar(mCanvas);
+
+        FontRenderContext frc = mCanvas.getFontRenderContext();
+        LineMetrics metricas = mFuente.getLineMetrics("Sat", frc);
+        mAscenso = (int) Math.ceil(metricas.getAscent());
+        int alto = mAscenso + (int) Math.ceil(metricas.getDescent()) + MARGEN * 2;
+
+        //la fecha empieza donde la pone la Disposicion y cada palabra detras de la anterior
+        float x = TAMANIO / 2f + TAMANIO / 8f;
+        float espacio = avance(" ", frc);
+        int ancho = 0;
+        for (int i = 0; i < 4; i++) {
+            mX[i] = x;
+            mY[i] = TAMANIO / 2f;
+            x += avance(PALABRAS[i], frc) + espacio;
+        }
+        mX[4] = TAMANIO / 4f;
+        mY[4] = TAMANIO / 2f + 40f;
+
+        //el atlas en una fila, cada palabra con su margen y ya con el brillo
+        int xAtlas = 0;
+        for (int i = 0; i < PALABRAS.length; i++) {
+            int w = (int) Math.ceil(avance(PALABRAS[i], frc)) + MARGEN * 2;
+            mOrigen[i] = new Rectangle(xAtlas, 0, w, alto);
+            xAtlas += w;
+            ancho = Math.max(ancho, w);
+        }
+        mCapa = new BufferedImage(ancho, alto, BufferedImage.TYPE_INT_ARGB);
+        mCapaBrillo = new BufferedImage(ancho, alto, BufferedImage.TYPE_INT_ARGB);
+        mAtlas = new BufferedImage(xAtlas, alto, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D atlas = mAtlas.createGraphics();
+        for (int i = 0; i < PALABRAS.length; i++) {
+            BufferedImage brillo = conBrillo(i);
+            atlas.drawImage(brillo, mOrigen[i].x, 0, mOrigen[i].x + mOrigen[i].width, alto,
+                    0, 0, mOrigen[i].width, alto, null);
+        }
+        atlas.dispose();
+    }
+
+    @TearDown
+    public void liberar() {
+        mCanvas.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage frame() {
+        for (int i = 0; i < PALABRAS.length; i++) {
+            if ("atlas".equals(modo)) {
+                //copia al pixel, como AtlasGlifos.dibujar
+                Rectangle r = mOrigen[i];
+                int izquierda = Math.round(mX[i]) - MARGEN;
+                int arriba = Math.round(mY[i]) - mAscenso - MARGEN;
+                mCanvas.drawImage(mAtlas, izquierda, arriba,
+                        izquierda + r.width, arriba + r.height,
+                        r.x, r.y, r.x + r.width, r.y + r.height, null);
+            } else if ("textoBrillo".equals(modo)) {
+                BufferedImage brillo = conBrillo(i);
+                mCanvas.drawImage(brillo, Math.round(mX[i]) - MARGEN,
+                        Math.round(mY[i]) - mAscenso - MARGEN, null);
+            } else {
+                mCanvas.setFont(mFuente);
+                mCanvas.setColor(COLORES[i]);
+                mCanvas.drawString(PALABRAS[i], mX[i], mY[i]);
+            }
+        }
+        return mDestino;
+    }
+
+    /**
+     * pinta la palabra en la capa y le pone el brillo, lo que hace el BlurMaskFilter en
+     * cada drawText: rasterizar, desenfocar y pintar el texto encima
+     */
+    private BufferedImage conBrillo(int i) {
+        Graphics2D capa = mCapa.createGraphics();
+        capa.setComposite(AlphaComposite.Clear);
+        capa.fillRect(0, 0, mCapa.getWidth(), mCapa.getHeight());
+        capa.setComposite(AlphaComposite.SrcOver);
+        suavizar(capa);
+        capa.setFont(mFuente);
+        capa.setColor(COLORES[i]);
+        capa.drawString(PALABRAS[i], MARGEN, MARGEN + mAscenso);
+        capa.dispose();
+
+        mDesenfoque.filter(mCapa, mCapaBrillo);
+        Graphics2D brillo = mCapaBrillo.createGraphics();
+        brillo.drawImage(mCapa, 0, 0, null);
+        brillo.dispose();
+        return mCapaBrillo;
+    }
+
+    private float avance(String texto, FontRenderContext frc) {
+        return (float) mFuente.getStringBounds(texto, frc).getWidth();
+    }
+
+    private static void suavizar(Graphics2D g) {
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
+                RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+    }
+
+    /**
+     * nucleo gaussiano normalizado de radio r
+     */
+    private static Kernel desenfoque(int r) {
+        int lado = r * 2 + 1;
+        float[] pesos = new float[lado * lado];
+        float sigma = r / 2f + 0.5f;
+        float suma = 0f;
+        for (int y = -r; y <= r; y++) {
+            for (int x = -r; x <= r; x++) {
+                float peso = (float) Math.exp(-(x * x + y * y) / (2f * sigma * sigma));
+                pesos[(y + r) * lado + x + r] = peso;
+                suma += peso;
+            }
+        }
+        for (int i = 0; i < pesos.length; i++) {
+            pesos[i] /= suma;
+        }
+        return new Kernel(lado, lado, pesos);
+    }
+}
@@ -0,0 +1,61 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import wear.samsoft.es.simpleinfoface.core.Disposicion;
+import wear.samsoft.es.simpleinfoface.core.Geometria;
+
+/**
+ * Mide los calculos de disposicion que se hacen en el onSurfaceChanged para varios tamanios
+ * de pantalla, incluida la rama de 320 pixeles, junto con la preparacion de las tablas de la
+ * geometria.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DisposicionBenchmark {
+
+    @Param({"280", "320", "360", "400"})
+    public int tamanio;
+
+    private final Disposicion mDisposicion = new Disposicion();
+    private final Geometria mGeometria = new Geometria();
+
+    @Benchmark
+    public Disposicion disposicion() {
+        mDisposicion.calcular(tamanio, tamanio);
+        return mDisposicion;
+    }
+
+    @Benchmark
+    public Geometria disposicionYGeometria() {
+        mDisposicion.calcular(tamanio, tamanio);
+        mGeometria.configurar(mDisposicion.centerX, mDisposicion.centerY,
+                mDisposicion.width, mDisposicion.height,
+                mDisposicion.longMin, mDisposicion.longHrs);
+        return mGeometria;
+    }
+}
@@ -0,0 +1,76 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import wear.samsoft.es.simpleinfoface.core.Disposicion;
+import wear.samsoft.es.simpleinfoface.core.FuenteTiempo;
+import wear.samsoft.es.simpleinfoface.core.Geometria;
+import wear.samsoft.es.simpleinfoface.core.ListaDibujo;
+import wear.samsoft.es.simpleinfoface.core.PreparadorFrame;
+
+/**
+ * Mide la preparacion de un frame entero como la hace el motor antes de pintar: hora,
+ * manecillas, arco de los segundos y lista de dibujo comparada con la anterior.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameBenchmark {
+
+    @Param({"280", "320", "360", "400"})
+    public int tamanio;
+
+    @Param({"false", "true"})
+    public boolean ambiente;
+
+    private final Disposicion mDisposicion = new Disposicion();
+    private final Geometria mGeometria = new Geometria();
+    private final ListaDibujo mLista = new ListaDibujo();
+    private final PreparadorFrame mPreparador = new PreparadorFrame(mGeometria, mLista);
+    private final FuenteTiempo mFuente = new FuenteTiempo(TimeZone.getTimeZone("Europe/Madrid"));
+
+    //un instante fijo que avanzamos como los ticks de cada modo
+    private long mAhora = 1444000000000L;
+    private long mPaso;
+
+    @Setup
+    public void preparar() {
+        mDisposicion.calcular(tamanio, tamanio);
+        mGeometria.configurar(mDisposicion.centerX, mDisposicion.centerY,
+                mDisposicion.width, mDisposicion.height,
+                mDisposicion.longMin, mDisposicion.longHrs);
+        mPaso = ambiente ? 60000L : 1000L;
+    }
+
+    @Benchmark
+    public boolean frame() {
+        mAhora += mPaso;
+        mFuente.actualizar(mAhora);
+        return mPreparador.preparar(mFuente, mAhora, ambiente, 2015283, 73, mDisposicion);
+    }
+}
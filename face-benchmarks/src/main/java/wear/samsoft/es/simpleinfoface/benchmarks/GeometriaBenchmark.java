@@ -0,0 +1,90 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import wear.samsoft.es.simpleinfoface.core.Geometria;
+
+/**
+ * Mide la geometria de un frame, los extremos de las dos manecillas, con las tablas de la
+ * Geometria y con Math.sin/Math.cos como se hacia antes en el onDraw.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GeometriaBenchmark {
+
+    private final Geometria mGeometria = new Geometria();
+    private final float[] mExtremo = new float[2];
+
+    private float centerX;
+    private float centerY;
+    private float longMin;
+    private float longHrs;
+
+    //minutos del frame, avanzan un poco en cada llamada para no medir siempre el mismo angulo
+    private float mMinutos;
+
+    @Setup
+    public void preparar() {
+        centerX = 160f;
+        centerY = 160f;
+        longMin = centerX - 40f;
+        longHrs = centerX - 80f;
+        mGeometria.configurar(centerX, centerY, 320, 320, longMin, longHrs);
+    }
+
+    private float siguienteMinuto() {
+        mMinutos += 0.0173f;
+        if (mMinutos >= 60f) {
+            mMinutos -= 60f;
+        }
+        return mMinutos;
+    }
+
+    @Benchmark
+    public void tablas(Blackhole bh) {
+        float minutos = siguienteMinuto();
+        mGeometria.extremoMinutos(minutos, mExtremo);
+        bh.consume(mExtremo[0]);
+        bh.consume(mExtremo[1]);
+        mGeometria.extremoHoras(3f + minutos / 60f, mExtremo);
+        bh.consume(mExtremo[0]);
+        bh.consume(mExtremo[1]);
+    }
+
+    @Benchmark
+    public void math(Blackhole bh) {
+        float minutos = siguienteMinuto();
+        float twoPi = (float) Math.PI * 2f;
+        float amin = minutos / 60f * twoPi;
+        bh.consume(centerX + (float) Math.sin(amin) * longMin);
+        bh.consume(centerY + (float) -Math.cos(amin) * longMin);
+        float ahrs = (3f + minutos / 60f) / 12f * twoPi;
+        bh.consume(centerX + (float) Math.sin(ahrs) * longHrs);
+        bh.consume(centerY + (float) -Math.cos(ahrs) * longHrs);
+    }
+}
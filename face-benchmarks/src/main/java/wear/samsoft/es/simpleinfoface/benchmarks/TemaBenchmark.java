@@ -0,0 +1,146 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import wear.samsoft.es.simpleinfoface.core.Disposicion;
+import wear.samsoft.es.simpleinfoface.core.FuenteTiempo;
+import wear.samsoft.es.simpleinfoface.core.Geometria;
+import wear.samsoft.es.simpleinfoface.core.Huella;
+import wear.samsoft.es.simpleinfoface.core.ListaDibujo;
+import wear.samsoft.es.simpleinfoface.core.PreparadorFrame;
+import wear.samsoft.es.simpleinfoface.core.Tema;
+
+/**
+ * Mide lo que le cuesta al hilo principal un frame en el que cambia el tema frente a uno sin
+ * cambio, y lo que cuesta compilar la parte de face-core de los recursos de un tema. Los
+ * recursos de cada tema ya vienen preparados (en el reloj los prepara el hilo de preparacion),
+ * el frame con cambio hace lo que el motor al llegar otro tema: lo busca por su identificador
+ * como ReceptorTemas, toma los recursos de ese tema y prepara la lista de dibujo entera.
+ *
+ * - sinCambio: un frame normal con los recursos del tema actual
+ * - cambio: se cambia de tema en todos los frames, el peor caso
+ * - compilar: lo que hace el hilo de preparacion con un tema nuevo, disposicion, geometria y
+ *   huella de la capa, mas la primera lista de dibujo entera
+ *
+ * Los pinceles, sprites y el atlas de cada tema son de Android y no se pueden medir aqui, el
+ * pintado del frame al cambiar de tema lo mide FramesTest en el modulo wear. Se mide por
+ * muestras para ver los percentiles altos y no solo la media, un pico en el cambio saldria en
+ * el p0.99.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TemaBenchmark {
+
+    @Param({"sinCambio", "cambio", "compilar"})
+    public String modo;
+
+    /**
+     * lo que el motor tiene de cada tema para el preparador
+     */
+    private static final class Recursos {
+        final Disposicion disposicion = new Disposicion();
+        final Geometria geometria = new Geometria();
+        final Tema tema;
+        long huella;
+
+        Recursos(Tema tema) {
+            this.tema = tema;
+        }
+
+        /**
+         * la parte de face-core de PreparadorRecursos.preparar
+         */
+        void compilar(int dia) {
+            disposicion.calcular(320, 320, true, 0);
+            geometria.configurar(disposicion.centerX, disposicion.centerY,
+                    disposicion.width, disposicion.height,
+                    disposicion.longMin, disposicion.longHrs);
+            huella = tema.huella(new Huella().mas(dia)).valor();
+        }
+    }
+
+    private static final int DIA = 2015283;
+
+    //los identificadores como llegan de la app del movil, uno por tema
+    private final String[] mIds = new String[Tema.TEMAS.length];
+    private final Recursos[] mRecursos = new Recursos[Tema.TEMAS.length];
+    private Recursos mActuales;
+    private int mSiguiente;
+
+    private final ListaDibujo mLista = new ListaDibujo();
+    private PreparadorFrame mPreparador;
+    private final FuenteTiempo mFuente = new FuenteTiempo(TimeZone.getTimeZone("Europe/Madrid"));
+
+    //un instante fijo que avanzamos como los ticks del modo interactivo
+    private long mAhora = 1444000000000L;
+
+    @Setup
+    public void preparar() {
+        for (int i = 0; i < mRecursos.length; i++) {
+            mIds[i] = Tema.TEMAS[i].id;
+            mRecursos[i] = new Recursos(Tema.TEMAS[i]);
+            mRecursos[i].compilar(DIA);
+        }
+        mActuales = mRecursos[0];
+        mPreparador = new PreparadorFrame(mActuales.geometria, mLista);
+    }
+
+    @Benchmark
+    public boolean frame() {
+        mAhora += 1000L;
+        if ("cambio".equals(modo)) {
+            //llega el siguiente tema y tomamos sus recursos, solo referencias
+            mSiguiente = (mSiguiente + 1) % mIds.length;
+            Tema tema = Tema.porId(mIds[mSiguiente]);
+            if (tema != mActuales.tema) {
+                mActuales = recursosDe(tema);
+                mPreparador.setGeometria(mActuales.geometria);
+                mLista.invalidar();
+            }
+        } else if ("compilar".equals(modo)) {
+            //unos recursos nuevos para el siguiente tema, como en el hilo de preparacion
+            mSiguiente = (mSiguiente + 1) % mIds.length;
+            mActuales = new Recursos(Tema.porId(mIds[mSiguiente]));
+            mActuales.compilar(DIA);
+            mPreparador.setGeometria(mActuales.geometria);
+            mLista.invalidar();
+        }
+        mFuente.actualizar(mAhora);
+        return mPreparador.preparar(mFuente, mAhora, false, DIA, 73, mActuales.disposicion);
+    }
+
+    private Recursos recursosDe(Tema tema) {
+        for (Recursos recursos : mRecursos) {
+            if (recursos.tema == tema) {
+                return recursos;
+            }
+        }
+        return mRecursos[0];
+    }
+}
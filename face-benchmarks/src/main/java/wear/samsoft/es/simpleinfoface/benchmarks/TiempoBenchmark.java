@@ -0,0 +1,64 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import wear.samsoft.es.simpleinfoface.core.FuenteTiempo;
+import wear.samsoft.es.simpleinfoface.core.Tiempo;
+
+/**
+ * Mide la descomposicion del tiempo de cada frame: como la hacia el onDraw, poniendo la hora
+ * en el Calendar y sacando horas, minutos, segundos y milisegundos, y con la FuenteTiempo a
+ * partir de epoch y el desfase guardado.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TiempoBenchmark {
+
+    private final Calendar mCalendar = Calendar.getInstance(TimeZone.getTimeZone("Europe/Madrid"));
+    private final FuenteTiempo mFuente = new FuenteTiempo(TimeZone.getTimeZone("Europe/Madrid"));
+    private final Tiempo mTiempo = new Tiempo();
+
+    //un instante fijo que avanzamos como si fueran frames de 1 Hz
+    private long mAhora = 1444000000000L;
+
+    @Benchmark
+    public Tiempo calendar() {
+        mAhora += 1000L;
+        mCalendar.setTimeInMillis(mAhora);
+        mTiempo.desdeCalendar(mCalendar);
+        return mTiempo;
+    }
+
+    @Benchmark
+    public Tiempo fuente() {
+        mAhora += 1000L;
+        mFuente.actualizar(mAhora);
+        mFuente.descomponer(mTiempo);
+        return mTiempo;
+    }
+}
@@ -0,0 +1,238 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Disposicion de los elementos de la caratula para un tamanio de pantalla. Son los calculos
+ * que antes hacia el onSurfaceChanged del motor, sin nada de Android, el motor solo tiene que
+ * medir los textos y crear los RectF y los shaders a partir de estos valores.
+ *
+ * Las pantallas de 320 pixeles o mas de alto usan la disposicion grande, con el anio en la
+ * fecha y los casilleros de la bateria mas grandes. Lo que cambia entre la pequenia y la
+ * grande esta en la tabla CLASES, el resto se calcula a partir del centro de la pantalla.
+ *
+ * Se puede escribir y leer en binario para guardarla en la TablaDisposiciones.
+ */
+public class Disposicion {
+
+    //alto a partir del cual usamos la disposicion grande
+    public static final float ALTO_GRANDE = 320f;
+
+    //longitud del cuadrado que representa cada segundo, margen del arco de los segundos
+    public static final float LONG_SEGUNDOS = 20f;
+
+    //padding para el casillero de la fecha
+    public static final float PADDING_FECHA = 3f;
+
+    //columnas de la tabla CLASES
+    private static final int TEXTO_FECHA = 0;//tamanio del texto de la fecha
+    private static final int TEXTO_FECHA_320 = 1;//el mismo con 320 pixeles justos
+    private static final int MEDIO_CASILLERO = 2;//medio ancho del arco de la bateria
+    private static final int MEDIO_MARCO = 3;//medio ancho del marco de la bateria
+    private static final int BAJO_MARCO = 4;//lo que baja el marco del centro
+    private static final int ALTO_TEXTO_BAT = 5;//lo que sube el texto de la bateria
+
+    //las dos clases de pantalla, pequenia y grande
+    private static final float[][] CLASES = {
+            {12f, 12f, 20f, 30f, 10f, 20f},
+            {15f, 13f, 30f, 40f, 10f, 30f},
+    };
+
+    //hay que subirla cada vez que cambie el calculo, para no leer disposiciones viejas
+    public static final int VERSION = 2;
+
+    //tamanio del canvas
+    public int width;
+    public int height;
+
+    //forma de la pantalla y el inset inferior (la barbilla de algunos relojes redondos)
+    public boolean redonda;
+    public int insetInferior;
+
+    //los centros del canvas
+    public float centerX;
+    public float centerY;
+
+    //longitud de las manecillas
+    public float longMin;
+    public float longHrs;
+
+    //largo del trazo de cada segundo para el efecto de guiones del arco
+    public float pathEffectLen;
+
+    //si estamos en la disposicion grande y si la fecha lleva el anio
+    public boolean grande;
+    public boolean conAnio;
+
+    //tamanio del texto de la fecha
+    public float tamanioTextoFecha;
+
+    //casillero con el arco del nivel de bateria (izquierda, arriba, derecha, abajo)
+    public final float[] casilleroBateria = new float[4];
+    //marco de la bateria
+    public final float[] casilleroBateriaPadre = new float[4];
+    //base del arco de los segundos
+    public final float[] ovalSec = new float[4];
+    //grafica del historial de bateria, dentro del arco de la bateria por debajo del texto
+    public final float[] historialBateria = new float[4];
+
+    //centro del texto de la bateria, el motor le resta la mitad de lo que mide el texto
+    public float centroTextoBatX;
+    public float centroTextoBatY;
+
+    //posicion de la fecha
+    public float offsetXTextoFecha;
+    public float offsetYTextoFecha;
+
+    /**
+     * calcula la disposicion para un tamanio de pantalla cuadrada y sin insets
+     */
+    public void calcular(int widthA, int heightA) {
+        calcular(widthA, heightA, false, 0);
+    }
+
+    /**
+     * calcula la disposicion para un tamanio de pantalla
+     * @param redonda la forma de la pantalla
+     * @param insetInferior el inset inferior del onApplyWindowInsets
+     */
+    public void calcular(int widthA, int heightA, boolean redonda, int insetInferior) {
+        width = widthA;
+        height = heightA;
+        this.redonda = redonda;
+        this.insetInferior = insetInferior;
+
+        centerX = width / 2f;
+        centerY = height / 2f;
+
+        longMin = centerX - 40f;
+        longHrs = centerX - 80f;
+
+        //el arco de los segundos deja un margen con el borde
+        ovalSec[0] = LONG_SEGUNDOS;
+        ovalSec[1] = LONG_SEGUNDOS;
+        ovalSec[2] = width - LONG_SEGUNDOS;
+        ovalSec[3] = height - LONG_SEGUNDOS;
+
+        //calculamos el angulo que tomaremos para cada segundo
+        pathEffectLen = ((float) Math.PI * width) / 60f;
+
+        grande = heightA >= ALTO_GRANDE;
+        //en dispositivos grandes la fecha tendra el anio
+        conAnio = grande;
+
+        //la bateria va en el cuarto izquierdo, el arco apoyado en el centro y el marco
+        //alrededor con la misma separacion por todos los lados
+        float[] clase = CLASES[grande ? 1 : 0];
+        float cuartoX = centerX / 2;
+        float medio = clase[MEDIO_CASILLERO];
+        float marco = clase[MEDIO_MARCO];
+        tamanioTextoFecha = heightA == ALTO_GRANDE ? clase[TEXTO_FECHA_320] : clase[TEXTO_FECHA];
+        rect(casilleroBateria, cuartoX - medio, centerY - medio * 2, cuartoX + medio, centerY);
+        rect(casilleroBateriaPadre, cuartoX - marco, centerY - medio * 2 - (marco - medio),
+                cuartoX + marco, centerY + clase[BAJO_MARCO]);
+        centroTextoBatX = cuartoX;
+        centroTextoBatY = centerY - clase[ALTO_TEXTO_BAT];
+
+        //la grafica del historial ocupa la mitad de abajo del arco, por debajo del texto y sin
+        //tocar el trazo del arco (la cuerda del circulo interior a la altura de su base)
+        float radioInterior = medio - 4f;
+        float arriba = medio * 0.3f;
+        float abajo = medio * 0.6f;
+        float medioAncho = (float) Math.sqrt(radioInterior * radioInterior - abajo * abajo);
+        rect(historialBateria, cuartoX - medioAncho, centerY - medio + arriba,
+                cuartoX + medioAncho, centerY - medio + abajo);
+
+        //la fecha va a la derecha del centro y un poco por encima
+        offsetXTextoFecha = centerX + centerX / 4;
+        offsetYTextoFecha = centerY - centerY / 6;
+    }
+
+    /**
+     * escribe la disposicion ya calculada en binario
+     */
+    public void escribir(DataOutput out) throws IOException {
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeBoolean(redonda);
+        out.writeInt(insetInferior);
+        out.writeFloat(centerX);
+        out.writeFloat(centerY);
+        out.writeFloat(longMin);
+        out.writeFloat(longHrs);
+        out.writeFloat(pathEffectLen);
+        out.writeBoolean(grande);
+        out.writeBoolean(conAnio);
+        out.writeFloat(tamanioTextoFecha);
+        escribir(out, casilleroBateria);
+        escribir(out, casilleroBateriaPadre);
+        escribir(out, ovalSec);
+        escribir(out, historialBateria);
+        out.writeFloat(centroTextoBatX);
+        out.writeFloat(centroTextoBatY);
+        out.writeFloat(offsetXTextoFecha);
+        out.writeFloat(offsetYTextoFecha);
+    }
+
+    /**
+     * lee una disposicion escrita con escribir, en el mismo orden
+     */
+    public void leer(DataInput in) throws IOException {
+        width = in.readInt();
+        height = in.readInt();
+        redonda = in.readBoolean();
+        insetInferior = in.readInt();
+        centerX = in.readFloat();
+        centerY = in.readFloat();
+        longMin = in.readFloat();
+        longHrs = in.readFloat();
+        pathEffectLen = in.readFloat();
+        grande = in.readBoolean();
+        conAnio = in.readBoolean();
+        tamanioTextoFecha = in.readFloat();
+        leer(in, casilleroBateria);
+        leer(in, casilleroBateriaPadre);
+        leer(in, ovalSec);
+        leer(in, historialBateria);
+        centroTextoBatX = in.readFloat();
+        centroTextoBatY = in.readFloat();
+        offsetXTextoFecha = in.readFloat();
+        offsetYTextoFecha = in.readFloat();
+    }
+
+    private static void escribir(DataOutput out, float[] r) throws IOException {
+        for (float v : r) {
+            out.writeFloat(v);
+        }
+    }
+
+    private static void leer(DataInput in, float[] r) throws IOException {
+        for (int i = 0; i < r.length; i++) {
+            r[i] = in.readFloat();
+        }
+    }
+
+    private static void rect(float[] r, float left, float top, float right, float bottom) {
+        r[0] = left;
+        r[1] = top;
+        r[2] = right;
+        r[3] = bottom;
+    }
+}
@@ -0,0 +1,154 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.core;
+
+import java.util.TimeZone;
+
+/**
+ * Fuente de la hora local sin Calendar. Descompone los milisegundos desde epoch en hora,
+ * minuto, segundo y milisegundo con aritmetica entera, sumando el desfase de la zona horaria
+ * que tenemos guardado.
+ *
+ * El desfase solo se vuelve a pedir a la zona cuando nos cambian de zona o cuando llegamos al
+ * siguiente cambio de horario (verano/invierno), que buscamos una sola vez al calcularlo.
+ */
+public class FuenteTiempo {
+
+    private static final long MS_SEGUNDO = 1000L;
+    private static final long MS_MINUTO = 60L * MS_SEGUNDO;
+    private static final long MS_HORA = 60L * MS_MINUTO;
+    private static final long MS_DIA = 24L * MS_HORA;
+
+    //hasta donde buscamos el siguiente cambio de horario y con que paso
+    private static final long BUSQUEDA_MAX = 400L * MS_DIA;
+    private static final long PASO_BUSQUEDA = MS_DIA;
+
+    //la hora local descompuesta en la ultima actualizacion
+    public int hora;//de 0 a 23
+    public int minuto;
+    public int segundo;
+    public int milisegundo;
+    //dias locales desde epoch, cambia a medianoche en la zona horaria
+    public long dia;
+
+    private TimeZone mZona;
+    //desfase guardado y el intervalo en el que sigue siendo bueno
+    private long mDesfase;
+    private long mValidoDesde = Long.MAX_VALUE;
+    private long mValidoHasta = Long.MIN_VALUE;
+
+    //cuantas veces hemos tenido que pedir el desfase a la zona
+    private int mRecalculos;
+
+    public FuenteTiempo(TimeZone zona) {
+        mZona = zona;
+    }
+
+    public TimeZone getZona() {
+        return mZona;
+    }
+
+    /**
+     * cambia la zona horaria, el desfase se recalcula en la siguiente actualizacion
+     */
+    public void setZona(TimeZone zona) {
+        mZona = zona;
+        mValidoDesde = Long.MAX_VALUE;
+        mValidoHasta = Long.MIN_VALUE;
+    }
+
+    /**
+     * descompone la hora local de un instante
+     * @param ahoraMillis milisegundos desde epoch, como System.currentTimeMillis()
+     */
+    public void actualizar(long ahoraMillis) {
+        if (ahoraMillis < mValidoDesde || ahoraMillis >= mValidoHasta) {
+            recalcularDesfase(ahoraMillis);
+        }
+        long local = ahoraMillis + mDesfase;
+        //division hacia abajo para que los instantes anteriores a 1970 tambien vayan bien
+        long dia = local / MS_DIA;
+        if (local % MS_DIA < 0) {
+            dia--;
+        }
+        int msDia = (int) (local - dia * MS_DIA);
+        this.dia = dia;
+        hora = (int) (msDia / MS_HORA);
+        msDia -= hora * MS_HORA;
+        minuto = (int) (msDia / MS_MINUTO);
+        msDia -= minuto * MS_MINUTO;
+        segundo = (int) (msDia / MS_SEGUNDO);
+        milisegundo = (int) (msDia - segundo * MS_SEGUNDO);
+    }
+
+    /**
+     * pasa la hora de la ultima actualizacion a la posicion de las manecillas
+     */
+    public void descomponer(Tiempo tiempo) {
+        tiempo.desdeCampos(hora % 12, minuto, segundo, milisegundo);
+    }
+
+    /**
+     * @return el desfase con UTC que estamos usando, en milisegundos
+     */
+    public long getDesfase() {
+        return mDesfase;
+    }
+
+    /**
+     * @return el instante del siguiente cambio de horario conocido, o el final de la busqueda
+     */
+    public long getValidoHasta() {
+        return mValidoHasta;
+    }
+
+    public int getRecalculos() {
+        return mRecalculos;
+    }
+
+    private void recalcularDesfase(long ahora) {
+        mRecalculos++;
+        mDesfase = mZona.getOffset(ahora);
+        mValidoDesde = ahora;
+        mValidoHasta = siguienteCambio(ahora, mDesfase);
+    }
+
+    /**
+     * busca el primer instante despues de ahora con un desfase distinto, a pasos de un dia y
+     * luego con una busqueda binaria dentro del dia en el que cambia
+     */
+    private long siguienteCambio(long ahora, long desfase) {
+        long limite = ahora + BUSQUEDA_MAX;
+        long antes = ahora;
+        while (antes < limite) {
+            long despues = Math.min(antes + PASO_BUSQUEDA, limite);
+            if (mZona.getOffset(despues) != desfase) {
+                //el cambio esta en (antes, despues]
+                while (despues - antes > 1) {
+                    long medio = antes + (despues - antes) / 2;
+                    if (mZona.getOffset(medio) != desfase) {
+                        despues = medio;
+                    } else {
+                        antes = medio;
+                    }
+                }
+                return despues;
+            }
+            antes = despues;
+        }
+        return limite;
+    }
+}
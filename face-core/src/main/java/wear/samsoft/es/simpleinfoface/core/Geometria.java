@@ -0,0 +1,151 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.core;
+
+/**
+ * Motor de geometria de la caratula. Precalcula tablas de senos y los extremos de las
+ * manecillas y marcadores cada vez que cambia el centro de la pantalla, de forma que en el
+ * onDraw no hay que llamar a Math.sin ni Math.cos, solo buscar en la tabla e interpolar.
+ *
+ * No usa nada de Android para poder probarla y medirla en la JVM.
+ *
+ * Los angulos se expresan en vueltas (1f es la circunferencia entera) empezando en las 12 y en
+ * el sentido de las agujas del reloj, igual que las manecillas.
+ */
+public class Geometria {
+
+    //numero de divisiones de la tabla de senos, una por cada decima de grado
+    public static final int PASOS_SENO = 3600;
+
+    //posiciones precalculadas de la manecilla de los minutos, una cada 6 segundos
+    public static final int PASOS_MINUTOS = 600;
+
+    //posiciones precalculadas de la manecilla de las horas, una cada minuto
+    public static final int PASOS_HORAS = 720;
+
+    //numero de marcadores de las horas
+    public static final int MARCADORES = 12;
+
+    //tabla de senos de una vuelta entera, con una entrada de mas para interpolar el ultimo paso
+    private static final float[] SENOS = new float[PASOS_SENO + 1];
+
+    static {
+        for (int i = 0; i <= PASOS_SENO; i++) {
+            SENOS[i] = (float) Math.sin(i * 2d * Math.PI / PASOS_SENO);
+        }
+    }
+
+    //extremos de las manecillas (x, y) en coordenadas de pantalla
+    private final float[] mMinutosX = new float[PASOS_MINUTOS + 1];
+    private final float[] mMinutosY = new float[PASOS_MINUTOS + 1];
+    private final float[] mHorasX = new float[PASOS_HORAS + 1];
+    private final float[] mHorasY = new float[PASOS_HORAS + 1];
+
+    //marcadores de las horas, para cada uno x e y del extremo exterior e interior
+    public final float[] marcadores = new float[MARCADORES * 4];
+
+    /**
+     * seno de un angulo expresado en vueltas, buscando en la tabla e interpolando
+     * @param vueltas el angulo, puede ser negativo o mayor que una vuelta
+     */
+    public static float seno(float vueltas) {
+        float pos = (vueltas - (float) Math.floor(vueltas)) * PASOS_SENO;
+        int i = (int) pos;
+        if (i >= PASOS_SENO) {
+            //por redondeo podemos caer justo en la ultima entrada
+            i = PASOS_SENO - 1;
+        }
+        float fraccion = pos - i;
+        return SENOS[i] + (SENOS[i + 1] - SENOS[i]) * fraccion;
+    }
+
+    /**
+     * coseno de un angulo expresado en vueltas, es el seno desplazado un cuarto de vuelta
+     */
+    public static float coseno(float vueltas) {
+        return seno(vueltas + 0.25f);
+    }
+
+    /**
+     * recalcula todas las tablas para un nuevo tamanio de pantalla, se llama desde el
+     * onSurfaceChanged
+     * @param centerX centro del canvas en X
+     * @param centerY centro del canvas en Y
+     * @param width ancho del canvas
+     * @param height alto del canvas
+     * @param longMin longitud de la manecilla de los minutos
+     * @param longHrs longitud de la manecilla de las horas
+     */
+    public void configurar(float centerX, float centerY, int width, int height,
+                    float longMin, float longHrs) {
+        rellenarExtremos(mMinutosX, mMinutosY, PASOS_MINUTOS, centerX, centerY, longMin);
+        rellenarExtremos(mHorasX, mHorasY, PASOS_HORAS, centerX, centerY, longHrs);
+
+        //los marcadores van de 15 a 25 pixeles del borde
+        float radioExtX = width - centerX - 15f;
+        float radioExtY = height - centerY - 15f;
+        float radioIntX = width - centerX - 25f;
+        float radioIntY = height - centerY - 25f;
+        for (int i = 0; i < MARCADORES; i++) {
+            float vueltas = (i + 1) / (float) MARCADORES;
+            float sen = seno(vueltas);
+            float cos = coseno(vueltas);
+            marcadores[i * 4] = centerX + sen * radioExtX;
+            marcadores[i * 4 + 1] = centerY - cos * radioExtY;
+            marcadores[i * 4 + 2] = centerX + sen * radioIntX;
+            marcadores[i * 4 + 3] = centerY - cos * radioIntY;
+        }
+    }
+
+    /**
+     * extremo de la manecilla de los minutos
+     * @param minutos minutos con fraccion, de 0 a 60
+     * @param salida array donde dejamos x en la posicion 0 e y en la 1
+     */
+    public void extremoMinutos(float minutos, float[] salida) {
+        interpolar(mMinutosX, mMinutosY, PASOS_MINUTOS, minutos / 60f, salida);
+    }
+
+    /**
+     * extremo de la manecilla de las horas
+     * @param horas horas con fraccion, de 0 a 12
+     * @param salida array donde dejamos x en la posicion 0 e y en la 1
+     */
+    public void extremoHoras(float horas, float[] salida) {
+        interpolar(mHorasX, mHorasY, PASOS_HORAS, horas / 12f, salida);
+    }
+
+    private static void rellenarExtremos(float[] xs, float[] ys, int pasos,
+                                         float centerX, float centerY, float longitud) {
+        for (int i = 0; i <= pasos; i++) {
+            double angulo = i * 2d * Math.PI / pasos;
+            xs[i] = centerX + (float) Math.sin(angulo) * longitud;
+            ys[i] = centerY - (float) Math.cos(angulo) * longitud;
+        }
+    }
+
+    private static void interpolar(float[] xs, float[] ys, int pasos, float vueltas,
+                                   float[] salida) {
+        float pos = (vueltas - (float) Math.floor(vueltas)) * pasos;
+        int i = (int) pos;
+        if (i >= pasos) {
+            i = pasos - 1;
+        }
+        float fraccion = pos - i;
+        salida[0] = xs[i] + (xs[i + 1] - xs[i]) * fraccion;
+        salida[1] = ys[i] + (ys[i + 1] - ys[i]) * fraccion;
+    }
+}
@@ -0,0 +1,176 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.core;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Elige como se actualiza la caratula segun la bateria y el modo de la pantalla:
+ *
+ * - cargando: segundos fluidos, la energia no importa
+ * - normal: un frame por segundo con el arco de los segundos
+ * - ahorro: por debajo del umbral de bateria sin arco de los segundos ni brillo, las
+ *   manecillas se quedan en el minuto y solo se pinta una vez por minuto
+ * - ambiente: lo que manda el sistema, un frame por minuto
+ *
+ * Para salir del ahorro hay que pasar de un umbral algo mayor que el de entrada, asi no va
+ * cambiando de politica cada vez que el nivel sube y baja un punto. Si se esta ahorrando se
+ * guarda aparte de la politica, asi se sigue ahorrando al volver del ambiente.
+ *
+ * Ademas apunta por politica los frames pintados y el tiempo de CPU del onDraw, que es lo
+ * que tenemos para estimar el gasto de energia de cada una y ajustar los umbrales. Sale en
+ * el dump del servicio junto a las metricas de pintado.
+ */
+public class GobernadorFrames {
+
+    public static final int POLITICA_AMBIENTE = 0;
+    public static final int POLITICA_CARGANDO = 1;
+    public static final int POLITICA_NORMAL = 2;
+    public static final int POLITICA_AHORRO = 3;
+    private static final int POLITICAS = 4;
+
+    private static final String[] NOMBRES = {"ambiente", "cargando", "normal", "ahorro"};
+
+    //porcentajes de bateria para entrar y salir del ahorro
+    public static final int UMBRAL_AHORRO = 15;
+    public static final int UMBRAL_SALIDA_AHORRO = 20;
+
+    private int mPolitica = POLITICA_NORMAL;
+    //si la bateria esta en ahorro, aunque ahora sea ambiente o no haya lectura
+    private boolean mAhorrando;
+
+    //por politica: frames, nanos de CPU pintando y milisegundos que ha estado activa
+    private final long[] mFrames = new long[POLITICAS];
+    private final long[] mCpuNanos = new long[POLITICAS];
+    private final long[] mActivaMillis = new long[POLITICAS];
+    //cambios de politica
+    private long mCambios;
+    //momento en que se entro en la politica actual
+    private long mDesde;
+
+    /**
+     * @param ahoraMillis hora de inicio de la politica normal
+     */
+    public GobernadorFrames(long ahoraMillis) {
+        mDesde = ahoraMillis;
+    }
+
+    /**
+     * elige la politica para el estado actual
+     * @param nivel porcentaje de bateria o -1 si no hay lectura
+     * @param cargando si el reloj esta cargando
+     * @param ambiente si la pantalla esta en modo ambiente
+     * @param ahoraMillis para contar el tiempo de cada politica
+     * @return true si la politica ha cambiado
+     */
+    public boolean elegir(int nivel, boolean cargando, boolean ambiente, long ahoraMillis) {
+        //el ahorro se sigue tambien en ambiente, al cargar se sale de el
+        if (cargando) {
+            mAhorrando = false;
+        } else if (nivel >= 0) {
+            mAhorrando = mAhorrando
+                    ? nivel < UMBRAL_SALIDA_AHORRO
+                    : nivel <= UMBRAL_AHORRO;
+        }
+        int politica;
+        if (ambiente) {
+            politica = POLITICA_AMBIENTE;
+        } else if (cargando) {
+            politica = POLITICA_CARGANDO;
+        } else if (nivel < 0) {
+            //sin lectura no sabemos si hay que ahorrar
+            politica = POLITICA_NORMAL;
+        } else {
+            politica = mAhorrando ? POLITICA_AHORRO : POLITICA_NORMAL;
+        }
+        if (politica == mPolitica) {
+            return false;
+        }
+        cerrarPeriodo(ahoraMillis);
+        mPolitica = politica;
+        mCambios++;
+        return true;
+    }
+
+    /**
+     * @return la politica actual, una de las POLITICA_*
+     */
+    public int getPolitica() {
+        return mPolitica;
+    }
+
+    /**
+     * @return true si con la politica actual se pinta el arco de los segundos
+     */
+    public boolean conSegundos() {
+        return mPolitica == POLITICA_CARGANDO || mPolitica == POLITICA_NORMAL;
+    }
+
+    /**
+     * @return true si con la politica actual se pinta con brillo
+     */
+    public boolean conBrillo() {
+        return mPolitica != POLITICA_AHORRO;
+    }
+
+    /**
+     * apunta un frame pintado con la politica actual
+     * @param cpuNanos tiempo de CPU del hilo en el onDraw
+     */
+    public void registrarFrame(long cpuNanos) {
+        mFrames[mPolitica]++;
+        mCpuNanos[mPolitica] += Math.max(0, cpuNanos);
+    }
+
+    /**
+     * escribe el gasto de cada politica en la salida del dump, por minuto activa para poder
+     * compararlas
+     */
+    public void volcar(String prefijo, PrintWriter out, long ahoraMillis) {
+        cerrarPeriodo(ahoraMillis);
+        out.print(prefijo);
+        out.println("politica=" + NOMBRES[mPolitica] + " cambios=" + mCambios);
+        for (int i = 0; i < POLITICAS; i++) {
+            double minutos = mActivaMillis[i] / 60000.0;
+            double porMinuto = minutos > 0 ? 1 / minutos : 0;
+            out.print(prefijo);
+            out.println(String.format(Locale.US,
+                    "%-10s activa=%.1fmin frames=%d cpu=%.1fms frames/min=%.1f cpu/min=%.2fms",
+                    NOMBRES[i], minutos, mFrames[i], mCpuNanos[i] / 1e6,
+                    mFrames[i] * porMinuto, mCpuNanos[i] / 1e6 * porMinuto));
+        }
+    }
+
+    /**
+     * pone a cero los contadores, la politica actual se sigue contando desde ahora
+     */
+    public void reiniciar(long ahoraMillis) {
+        for (int i = 0; i < POLITICAS; i++) {
+            mFrames[i] = 0;
+            mCpuNanos[i] = 0;
+            mActivaMillis[i] = 0;
+        }
+        mCambios = 0;
+        mDesde = ahoraMillis;
+    }
+
+    //suma a la politica actual el tiempo desde que entro o desde el ultimo volcado
+    private void cerrarPeriodo(long ahoraMillis) {
+        mActivaMillis[mPolitica] += Math.max(0, ahoraMillis - mDesde);
+        mDesde = ahoraMillis;
+    }
+}
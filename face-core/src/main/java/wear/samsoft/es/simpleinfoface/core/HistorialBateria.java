@@ -0,0 +1,407 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+
+package wear.samsoft.es.simpleinfoface.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Historial del nivel de bateria en un buffer circular de tipos primitivos, un long con la
+ * hora y un byte con el nivel y la carga por muestra, sin colecciones ni objetos por muestra.
+ * Solo se apunta una muestra cuando cambia el nivel o la carga, con eso una semana cabe de
+ * sobra.
+ *
+ * En disco es un fichero binario al que solo se anaden muestras, por lotes de LOTE en vez de
+ * una a una. Cuando el fichero tiene muchas mas muestras de las que caben en memoria se
+ * reescribe solo con las del buffer.
+ *
+ * Para pintarlo se baja a PUNTOS puntos por vista (la ultima hora, el ultimo dia o la ultima
+ * semana) y se dejan ya como segmentos para drawLines, asi el onDraw no recorre las muestras.
+ *
+ * Lo comparten el hilo principal, que apunta las muestras y calcula las lineas, y el de
+ * preparacion, que lee y escribe el fichero. El monitor del objeto solo protege el buffer y
+ * se suelta enseguida: para escribir se copian las muestras y el fichero se toca fuera, con
+ * su propio cerrojo, asi una escritura lenta nunca para al hilo que pinta.
+ */
+public class HistorialBateria {
+
+    //muestras que caben en memoria y muestras que se juntan antes de escribirlas
+    public static final int CAPACIDAD = 4096;
+    public static final int LOTE = 16;
+
+    //vistas del historial, cada una con su duracion
+    public static final int VISTA_HORA = 0;
+    public static final int VISTA_DIA = 1;
+    public static final int VISTA_SEMANA = 2;
+    public static final int VISTAS = 3;
+    private static final long[] DURACION = {3600000L, 24 * 3600000L, 7 * 24 * 3600000L};
+
+    //puntos de la grafica de cada vista
+    public static final int PUNTOS = 48;
+
+    //cabecera del fichero, "SIFH", y version del formato
+    private static final int MAGIA = 0x53494648;
+    private static final int VERSION = 1;
+    private static final int BYTES_CABECERA = 8;
+    private static final int BYTES_MUESTRA = 9;
+
+    //el nivel va en los 7 bits bajos del byte y la carga en el alto
+    private static final int BIT_CARGANDO = 0x80;
+    private static final int MASCARA_NIVEL = 0x7F;
+
+    private final long[] mTiempos = new long[CAPACIDAD];
+    private final byte[] mEstados = new byte[CAPACIDAD];
+    //posicion de la muestra mas antigua y numero de muestras
+    private int mInicio;
+    private int mCuenta;
+
+    //las ultimas muestras que aun no estan en el fichero y las que tiene el fichero
+    private int mPendientes;
+    private int mEnFichero;
+    //cambia con cada muestra nueva, para saber cuando recalcular las lineas
+    private int mVersion;
+
+    //nivel de cada punto de la vista, reutilizado al calcular las lineas
+    private final float[] mNiveles = new float[PUNTOS];
+
+    //contadores para el dumpsys
+    private int mEscrituras;
+    private int mCompactaciones;
+
+    //solo un hilo a la vez lee o escribe el fichero, se toma antes que el monitor del objeto
+    private final Object mCerrojoFichero = new Object();
+    //una escritura ha fallado a medias, la siguiente reescribe el fichero entero
+    private boolean mFicheroRoto;
+
+    /**
+     * apunta una muestra si ha cambiado el nivel o la carga
+     * @param nivel porcentaje de bateria, si es -1 no hay lectura y no se apunta
+     * @return true si se ha apuntado
+     */
+    public synchronized boolean anadir(long ahoraMillis, int nivel, boolean cargando) {
+        if (nivel < 0) {
+            return false;
+        }
+        byte estado = (byte) (Math.min(nivel, 100) | (cargando ? BIT_CARGANDO : 0));
+        if (mCuenta > 0) {
+            int ultima = indice(mCuenta - 1);
+            //igual que la ultima, o la hora ha ido hacia atras y romperia el orden
+            if (mEstados[ultima] == estado || ahoraMillis < mTiempos[ultima]) {
+                return false;
+            }
+        }
+        meter(ahoraMillis, estado);
+        mPendientes = Math.min(mPendientes + 1, mCuenta);
+        mVersion++;
+        return true;
+    }
+
+    /**
+     * @return muestras que aun no se han escrito en el fichero
+     */
+    public synchronized int getPendientes() {
+        return mPendientes;
+    }
+
+    /**
+     * @return un numero que cambia cada vez que cambia el historial
+     */
+    public synchronized int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * @return milisegundos que cubre cada punto de la vista, cada cuanto se mueve la grafica
+     */
+    public static long paso(int vista) {
+        return DURACION[vista] / PUNTOS;
+    }
+
+    /**
+     * carga el historial del fichero, quedandose con las ultimas CAPACIDAD muestras. Lo que
+     * ya se hubiera apuntado en memoria antes de cargar se pone detras de lo leido y queda
+     * pendiente de escribir. Si el fichero esta cortado o es de otra version se reescribe con
+     * lo que se haya podido leer
+     * @return true si habia fichero
+     */
+    public boolean cargar(File fichero) {
+        synchronized (mCerrojoFichero) {
+            //leemos en otro historial sin tocar este, el hilo principal puede seguir apuntando
+            HistorialBateria leido = new HistorialBateria();
+            int enFichero = 0;
+            boolean existe = fichero.exists();
+            boolean entero = true;
+            if (existe) {
+                entero = (fichero.length() - BYTES_CABECERA) % BYTES_MUESTRA == 0;
+                DataInputStream in = null;
+                try {
+                    in = new DataInputStream(
+                            new BufferedInputStream(new FileInputStream(fichero)));
+                    if (in.readInt() != MAGIA || in.readInt() != VERSION) {
+                        entero = false;
+                    } else {
+                        while (true) {
+                            leido.meter(in.readLong(), in.readByte());
+                            enFichero++;
+                        }
+                    }
+                } catch (EOFException e) {
+                    //final del fichero
+                } catch (IOException e) {
+                    entero = false;
+                } finally {
+                    cerrar(in);
+                }
+            }
+            synchronized (this) {
+                juntar(leido, enFichero);
+            }
+            //si estaba a medias lo dejamos bien para poder seguir anadiendo al final
+            if (existe && (!entero || enFichero > CAPACIDAD * 2)) {
+                reescribir(fichero);
+            }
+            return existe;
+        }
+    }
+
+    /**
+     * anade al fichero las muestras pendientes, se llama desde el hilo de preparacion cuando
+     * se junta un lote y al parar el servicio
+     * @return true si se han escrito
+     */
+    public boolean escribirPendientes(File fichero) {
+        synchronized (mCerrojoFichero) {
+            long[] tiempos;
+            byte[] estados;
+            synchronized (this) {
+                if (mPendientes == 0) {
+                    return true;
+                }
+                //con el fichero a medias o con mucho que ya no cabe en memoria lo
+                //reescribimos entero
+                if (mFicheroRoto || mEnFichero + mPendientes > CAPACIDAD * 2) {
+                    tiempos = null;
+                    estados = null;
+                } else {
+                    tiempos = new long[mPendientes];
+                    estados = new byte[mPendientes];
+                    copiar(mCuenta - mPendientes, tiempos, estados);
+                }
+            }
+            if (tiempos == null) {
+                return reescribir(fichero);
+            }
+            //las pendientes se escriben fuera del monitor, las que se apunten mientras tanto
+            //se quedan para el siguiente lote
+            boolean nuevo = !fichero.exists() || fichero.length() == 0;
+            DataOutputStream out = null;
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(fichero, true)));
+                if (nuevo) {
+                    out.writeInt(MAGIA);
+                    out.writeInt(VERSION);
+                }
+                for (int i = 0; i < tiempos.length; i++) {
+                    out.writeLong(tiempos[i]);
+                    out.writeByte(estados[i]);
+                }
+                out.close();
+                out = null;
+                synchronized (this) {
+                    mEnFichero += tiempos.length;
+                    mPendientes = Math.max(0, mPendientes - tiempos.length);
+                    mEscrituras++;
+                }
+                return true;
+            } catch (IOException e) {
+                //puede haber quedado media muestra al final, la siguiente vez lo reescribimos
+                synchronized (this) {
+                    mFicheroRoto = true;
+                }
+                return false;
+            } finally {
+                cerrar(out);
+            }
+        }
+    }
+
+    /**
+     * calcula la grafica de una vista como segmentos para drawLines. Cada punto es el nivel
+     * al final de su trozo de tiempo, los trozos antes de la primera muestra no se pintan
+     * @param vista una de las VISTA_*
+     * @param salida con sitio para PUNTOS * 4 floats
+     * @return el numero de floats escritos en salida
+     */
+    public synchronized int lineas(int vista, long ahoraMillis, float left, float top,
+                                   float right, float bottom, float[] salida) {
+        long paso = paso(vista);
+        long desde = ahoraMillis - DURACION[vista];
+        //recorremos las muestras una sola vez llevando la ultima antes del final del punto
+        int siguiente = 0;
+        float nivel = -1f;
+        for (int p = 0; p < PUNTOS; p++) {
+            long fin = desde + (p + 1) * paso;
+            while (siguiente < mCuenta && mTiempos[indice(siguiente)] <= fin) {
+                nivel = mEstados[indice(siguiente)] & MASCARA_NIVEL;
+                siguiente++;
+            }
+            mNiveles[p] = nivel;
+        }
+        float ancho = (right - left) / (PUNTOS - 1);
+        float alto = bottom - top;
+        int n = 0;
+        for (int p = 1; p < PUNTOS; p++) {
+            if (mNiveles[p - 1] < 0) {
+                continue;
+            }
+            salida[n++] = left + (p - 1) * ancho;
+            salida[n++] = bottom - mNiveles[p - 1] / 100f * alto;
+            salida[n++] = left + p * ancho;
+            salida[n++] = bottom - mNiveles[p] / 100f * alto;
+        }
+        return n;
+    }
+
+    /**
+     * escribe los contadores en la salida del dump
+     */
+    public synchronized void volcar(String prefijo, PrintWriter out) {
+        out.print(prefijo);
+        out.println("historial muestras=" + mCuenta + " pendientes=" + mPendientes
+                + " enFichero=" + mEnFichero + " escrituras=" + mEscrituras
+                + " compactaciones=" + mCompactaciones);
+    }
+
+    //mete una muestra al final, si esta lleno pisa la mas antigua
+    private void meter(long tiempo, byte estado) {
+        int i;
+        if (mCuenta < CAPACIDAD) {
+            i = indice(mCuenta);
+            mCuenta++;
+        } else {
+            i = mInicio;
+            mInicio = (mInicio + 1) % CAPACIDAD;
+        }
+        mTiempos[i] = tiempo;
+        mEstados[i] = estado;
+    }
+
+    //posicion en los arrays de la muestra n, contando desde la mas antigua
+    private int indice(int n) {
+        return (mInicio + n) % CAPACIDAD;
+    }
+
+    //pone las muestras leidas del fichero delante de las que ya hubiera en memoria, las de
+    //memoria que no sean posteriores a la ultima leida o no cambien nada se descartan
+    private void juntar(HistorialBateria leido, int enFichero) {
+        long[] tiempos = new long[mCuenta];
+        byte[] estados = new byte[mCuenta];
+        copiar(0, tiempos, estados);
+        mInicio = 0;
+        mCuenta = 0;
+        for (int n = 0; n < leido.mCuenta; n++) {
+            int i = leido.indice(n);
+            meter(leido.mTiempos[i], leido.mEstados[i]);
+        }
+        int anadidas = 0;
+        for (int n = 0; n < tiempos.length; n++) {
+            if (mCuenta > 0) {
+                int ultima = indice(mCuenta - 1);
+                if (mEstados[ultima] == estados[n] || tiempos[n] < mTiempos[ultima]) {
+                    continue;
+                }
+            }
+            meter(tiempos[n], estados[n]);
+            anadidas++;
+        }
+        mPendientes = Math.min(anadidas, mCuenta);
+        mEnFichero = enFichero;
+        mVersion++;
+    }
+
+    //copia las muestras desde la n hasta la ultima, contando desde la mas antigua
+    private void copiar(int desde, long[] tiempos, byte[] estados) {
+        for (int n = desde; n < mCuenta; n++) {
+            int i = indice(n);
+            tiempos[n - desde] = mTiempos[i];
+            estados[n - desde] = mEstados[i];
+        }
+    }
+
+    //escribe el fichero solo con lo que hay en memoria, en un temporal que luego se renombra.
+    //Se llama con el cerrojo del fichero, del buffer solo se toma una copia
+    private boolean reescribir(File fichero) {
+        long[] tiempos;
+        byte[] estados;
+        int pendientes;
+        synchronized (this) {
+            tiempos = new long[mCuenta];
+            estados = new byte[mCuenta];
+            copiar(0, tiempos, estados);
+            pendientes = mPendientes;
+        }
+        File temporal = new File(fichero.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporal)));
+            out.writeInt(MAGIA);
+            out.writeInt(VERSION);
+            for (int i = 0; i < tiempos.length; i++) {
+                out.writeLong(tiempos[i]);
+                out.writeByte(estados[i]);
+            }
+            out.close();
+            out = null;
+            if (!temporal.renameTo(fichero)) {
+                return false;
+            }
+            synchronized (this) {
+                //las apuntadas mientras escribiamos siguen pendientes
+                mEnFichero = tiempos.length;
+                mPendientes = Math.max(0, mPendientes - pendientes);
+                mFicheroRoto = false;
+                mCompactaciones++;
+            }
+            return true;
+        } catch (IOException e) {
+            temporal.delete();
+            return false;
+        } finally {
+            cerrar(out);
+        }
+    }
+
+    private static void cerrar(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                //no hay nada que hacer
+            }
+        }
+    }
+}
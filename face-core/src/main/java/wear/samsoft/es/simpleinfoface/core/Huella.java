@@ -0,0 +1,54 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.core;
+
+/**
+ * Huella de 64 bits (FNV-1a) de todo lo que decide como queda un bitmap pintado: tamanios,
+ * colores, grosores, el dia... Se guarda junto a los pixeles en la cache de disco y si al
+ * leerlos no coincide la cache esta caducada.
+ */
+public class Huella {
+
+    private static final long INICIO = 0xcbf29ce484222325L;
+    private static final long PRIMO = 0x100000001b3L;
+
+    private long mValor = INICIO;
+
+    public Huella mas(int v) {
+        for (int i = 0; i < 4; i++) {
+            mValor ^= v & 0xFF;
+            mValor *= PRIMO;
+            v >>>= 8;
+        }
+        return this;
+    }
+
+    public Huella mas(long v) {
+        return mas((int) v).mas((int) (v >>> 32));
+    }
+
+    public Huella mas(float v) {
+        return mas(Float.floatToIntBits(v));
+    }
+
+    public Huella mas(boolean v) {
+        return mas(v ? 1 : 0);
+    }
+
+    public long valor() {
+        return mValor;
+    }
+}
@@ -0,0 +1,118 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+
+package wear.samsoft.es.simpleinfoface.core;
+
+import java.util.Arrays;
+
+/**
+ * Indice de las zonas de la caratula que responden a un toque. La pantalla se parte en una
+ * rejilla de celdas de CELDA pixeles y cada celda guarda la zona que la cubre, asi saber que se
+ * ha tocado es leer una celda sin recorrer las zonas ni hacer cuentas con sus formas.
+ *
+ * Se llena una vez por pantalla, a la vez que se calcula la disposicion, y despues solo se
+ * consulta. Si dos zonas se pisan se queda la ultima que se anade.
+ */
+public class IndiceToques {
+
+    //lado de cada celda en pixeles, un dedo cubre varias
+    public static final int CELDA = 8;
+
+    //lo que devuelve buscar() fuera de cualquier zona
+    public static final int NINGUNA = -1;
+
+    private int mColumnas;
+    private int mFilas;
+    //zona de cada celda mas uno, 0 si no hay ninguna
+    private byte[] mCeldas = new byte[0];
+
+    /**
+     * prepara una rejilla vacia para la pantalla
+     */
+    public void configurar(int width, int height) {
+        mColumnas = (width + CELDA - 1) / CELDA;
+        mFilas = (height + CELDA - 1) / CELDA;
+        int n = mColumnas * mFilas;
+        if (mCeldas.length != n) {
+            mCeldas = new byte[n];
+        } else {
+            Arrays.fill(mCeldas, (byte) 0);
+        }
+    }
+
+    /**
+     * anade una zona rectangular, las celdas cuyo centro cae dentro
+     * @param zona de 0 a 126
+     * @param r el rectangulo (izquierda, arriba, derecha, abajo)
+     */
+    public void anadirRect(int zona, float[] r) {
+        anadir(zona, r, false);
+    }
+
+    /**
+     * anade una zona con forma de ovalo inscrito en el rectangulo, como los arcos de la bateria
+     * @param zona de 0 a 126
+     * @param r el rectangulo del ovalo (izquierda, arriba, derecha, abajo)
+     */
+    public void anadirOvalo(int zona, float[] r) {
+        anadir(zona, r, true);
+    }
+
+    /**
+     * @return la zona en el punto, o NINGUNA
+     */
+    public int buscar(int x, int y) {
+        if (x < 0 || y < 0) {
+            return NINGUNA;
+        }
+        int columna = x / CELDA;
+        int fila = y / CELDA;
+        if (columna >= mColumnas || fila >= mFilas) {
+            return NINGUNA;
+        }
+        return mCeldas[fila * mColumnas + columna] - 1;
+    }
+
+    private void anadir(int zona, float[] r, boolean ovalo) {
+        byte valor = (byte) (zona + 1);
+        float cx = (r[0] + r[2]) / 2f;
+        float cy = (r[1] + r[3]) / 2f;
+        float rx = (r[2] - r[0]) / 2f;
+        float ry = (r[3] - r[1]) / 2f;
+        //solo recorremos las celdas que tocan el rectangulo
+        int c0 = Math.max(0, (int) (r[0] / CELDA));
+        int c1 = Math.min(mColumnas - 1, (int) (r[2] / CELDA));
+        int f0 = Math.max(0, (int) (r[1] / CELDA));
+        int f1 = Math.min(mFilas - 1, (int) (r[3] / CELDA));
+        for (int f = f0; f <= f1; f++) {
+            float y = f * CELDA + CELDA / 2f;
+            for (int c = c0; c <= c1; c++) {
+                float x = c * CELDA + CELDA / 2f;
+                boolean dentro;
+                if (ovalo) {
+                    float dx = (x - cx) / rx;
+                    float dy = (y - cy) / ry;
+                    dentro = dx * dx + dy * dy <= 1f;
+                } else {
+                    dentro = x >= r[0] && x <= r[2] && y >= r[1] && y <= r[3];
+                }
+                if (dentro) {
+                    mCeldas[f * mColumnas + c] = valor;
+                }
+            }
+        }
+    }
+}
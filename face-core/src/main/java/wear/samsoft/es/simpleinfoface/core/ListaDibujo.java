@@ -0,0 +1,170 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.core;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lista compacta de las operaciones de pintado de un frame, con las coordenadas cuantizadas
+ * a pixeles enteros. Antes de repintar grabamos la lista del frame nuevo y la comparamos con
+ * la del anterior, si son iguales lo que se ve en pantalla no ha cambiado y nos ahorramos
+ * tocar el canvas.
+ *
+ * Usa dos arrays de enteros que se van intercambiando, grabar un frame no crea objetos.
+ */
+public class ListaDibujo {
+
+    //tipos de operacion
+    public static final int OP_CAPA = 1;//modo y dia de la capa estatica
+    public static final int OP_ARCO_SEGUNDOS = 2;//angulo final del arco
+    public static final int OP_BATERIA = 3;//nivel de bateria
+    public static final int OP_FECHA = 4;//dia de la fecha
+    public static final int OP_LINEA = 5;//una manecilla, origen y extremo
+
+    //cada operacion ocupa el tipo y cuatro valores
+    private static final int CAMPOS = 5;
+    private static final int MAX_OPERACIONES = 16;
+
+    //el arco de los segundos se cuantiza a cuartos de grado, menos de un pixel en el borde
+    public static final float PASOS_POR_GRADO = 4f;
+
+    private int[] mActual = new int[MAX_OPERACIONES * CAMPOS];
+    private int[] mAnterior = new int[MAX_OPERACIONES * CAMPOS];
+    private int mLongActual;
+    private int mLongAnterior;
+
+    //cuando algo externo cambia lo que se pinta (tamanio, modo...) forzamos el siguiente frame
+    private boolean mForzar = true;
+
+    //contadores para saber cuantos repintados nos ahorramos
+    private long mFramesPintados;
+    private long mFramesSaltados;
+    private long mInicioMillis = -1;
+
+    /**
+     * empezamos a grabar un frame nuevo, el que teniamos pasa a ser el anterior
+     */
+    public void empezar() {
+        int[] aux = mAnterior;
+        mAnterior = mActual;
+        mActual = aux;
+        mLongAnterior = mLongActual;
+        mLongActual = 0;
+    }
+
+    /**
+     * graba una operacion con sus valores ya cuantizados
+     */
+    public void op(int tipo, int a, int b, int c, int d) {
+        if (mLongActual + CAMPOS > mActual.length) {
+            //no deberia pasar, pero si nos pasamos forzamos el repintado
+            mForzar = true;
+            return;
+        }
+        mActual[mLongActual++] = tipo;
+        mActual[mLongActual++] = a;
+        mActual[mLongActual++] = b;
+        mActual[mLongActual++] = c;
+        mActual[mLongActual++] = d;
+    }
+
+    /**
+     * graba una linea redondeando sus extremos al pixel
+     */
+    public void linea(float x0, float y0, float x1, float y1) {
+        op(OP_LINEA, Math.round(x0), Math.round(y0), Math.round(x1), Math.round(y1));
+    }
+
+    /**
+     * graba el arco de los segundos
+     * @param grados angulo final del arco
+     */
+    public void arco(float grados) {
+        op(OP_ARCO_SEGUNDOS, Math.round(grados * PASOS_POR_GRADO), 0, 0, 0);
+    }
+
+    /**
+     * acaba de grabar el frame y lo compara con el anterior
+     * @param ahoraMillis hora del frame, para las estadisticas
+     * @return true si el frame es distinto y hay que repintar
+     */
+    public boolean terminar(long ahoraMillis) {
+        if (mInicioMillis < 0) {
+            mInicioMillis = ahoraMillis;
+        }
+        boolean distinto = mForzar || mLongActual != mLongAnterior;
+        for (int i = 0; !distinto && i < mLongActual; i++) {
+            distinto = mActual[i] != mAnterior[i];
+        }
+        mForzar = false;
+        if (distinto) {
+            mFramesPintados++;
+        } else {
+            mFramesSaltados++;
+        }
+        return distinto;
+    }
+
+    /**
+     * el siguiente frame se repintara aunque sea igual al anterior
+     */
+    public void invalidar() {
+        mForzar = true;
+    }
+
+    /**
+     * huella de las operaciones del ultimo frame grabado, para comparar frames fuera del reloj
+     */
+    public long huella() {
+        Huella huella = new Huella().mas(mLongActual);
+        for (int i = 0; i < mLongActual; i++) {
+            huella.mas(mActual[i]);
+        }
+        return huella.valor();
+    }
+
+    public long getFramesPintados() {
+        return mFramesPintados;
+    }
+
+    public long getFramesSaltados() {
+        return mFramesSaltados;
+    }
+
+    /**
+     * escribe los contadores en la salida del dump
+     */
+    public void volcar(String prefijo, PrintWriter out, long ahoraMillis) {
+        long transcurrido = mInicioMillis < 0 ? 0 : ahoraMillis - mInicioMillis;
+        out.print(prefijo);
+        out.print("listaDibujo pintados=" + mFramesPintados + " saltados=" + mFramesSaltados);
+        if (transcurrido > 0) {
+            out.print(" saltadosPorHora="
+                    + mFramesSaltados * TimeUnit.HOURS.toMillis(1) / transcurrido);
+        }
+        out.println();
+    }
+
+    /**
+     * borra los contadores
+     */
+    public void reiniciar(long ahoraMillis) {
+        mFramesPintados = 0;
+        mFramesSaltados = 0;
+        mInicioMillis = ahoraMillis;
+    }
+}
@@ -0,0 +1,217 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.core;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metricas de pintado, guarda en histogramas de tamanio fijo cuanto tarda cada frame y cada
+ * fase del onDraw, y cuenta los frames que no llegan a tiempo. Todo son arrays de enteros
+ * creados al principio para no crear objetos mientras pintamos.
+ *
+ * Los datos se sacan con el dump del servicio:
+ * adb shell dumpsys activity service wear.samsoft.es.simpleinfoface/.ServicioMain
+ */
+public class MetricasFrame {
+
+    //fases del onDraw que medimos
+    public static final int FASE_CAPA = 0;//fondo y marcadores, volcados desde la capa estatica
+    public static final int FASE_SEGUNDOS = 1;
+    public static final int FASE_FECHA = 2;
+    public static final int FASE_BATERIA = 3;
+    public static final int FASE_MANECILLAS = 4;
+    public static final int FASES = 5;
+
+    private static final String[] NOMBRES_FASES = {
+            "capa", "segundos", "fecha", "bateria", "manecillas"
+    };
+
+    //el histograma va de 0 a 64 ms en cubetas de un cuarto de milisegundo, lo que pase de
+    //ahi cae en la ultima cubeta
+    public static final int CUBETAS = 257;
+    private static final long NANOS_CUBETA = TimeUnit.MICROSECONDS.toNanos(250);
+
+    //un frame que tarda mas que un vsync de 60 Hz ya se nota en pantalla
+    public static final long PLAZO_VSYNC_NANOS = TimeUnit.MICROSECONDS.toNanos(16667);
+
+    //histograma del frame entero en la fila FASES y de cada fase en las demas
+    private final int[][] mHistogramas = new int[FASES + 1][CUBETAS];
+    private final long[] mTotalNanos = new long[FASES + 1];
+    private final long[] mMaxNanos = new long[FASES + 1];
+    private final long[] mCuentas = new long[FASES + 1];
+
+    private long mFrames;
+    private long mFueraDePlazo;
+    private long mMasDeUnVsync;
+
+    //tiempo desde que se crea el motor hasta el final del primer frame, -1 si no lo hay
+    private long mArranqueNanos = -1;
+
+    //momento de inicio del frame y de la ultima fase marcada
+    private long mInicioFrame;
+    private long mUltimaMarca;
+
+    /**
+     * empezamos a medir un frame
+     * @param ahoraNanos System.nanoTime()
+     */
+    public void empezarFrame(long ahoraNanos) {
+        mInicioFrame = ahoraNanos;
+        mUltimaMarca = ahoraNanos;
+    }
+
+    /**
+     * acaba una fase, el tiempo que se le apunta es el que ha pasado desde la marca anterior
+     * @param fase una de las FASE_*
+     * @param ahoraNanos System.nanoTime()
+     */
+    public void marcarFase(int fase, long ahoraNanos) {
+        registrar(fase, ahoraNanos - mUltimaMarca);
+        mUltimaMarca = ahoraNanos;
+    }
+
+    /**
+     * acaba el frame
+     * @param ahoraNanos System.nanoTime()
+     * @param plazoNanos lo que podia tardar el frame segun el modo de actualizacion
+     */
+    public void terminarFrame(long ahoraNanos, long plazoNanos) {
+        long duracion = ahoraNanos - mInicioFrame;
+        registrar(FASES, duracion);
+        mFrames++;
+        if (duracion > plazoNanos) {
+            mFueraDePlazo++;
+        }
+        if (duracion > PLAZO_VSYNC_NANOS) {
+            mMasDeUnVsync++;
+        }
+    }
+
+    public long getFrames() {
+        return mFrames;
+    }
+
+    public long getFueraDePlazo() {
+        return mFueraDePlazo;
+    }
+
+    /**
+     * borra todo lo medido
+     */
+    public void reiniciar() {
+        for (int i = 0; i <= FASES; i++) {
+            Arrays.fill(mHistogramas[i], 0);
+            mTotalNanos[i] = 0;
+            mMaxNanos[i] = 0;
+            mCuentas[i] = 0;
+        }
+        mFrames = 0;
+        mFueraDePlazo = 0;
+        mMasDeUnVsync = 0;
+    }
+
+    /**
+     * percentil de una fila del histograma, devuelve el limite superior de la cubeta
+     * @param fila la fase o FASES para el frame entero
+     * @param percentil de 0 a 100
+     */
+    public long percentilNanos(int fila, int percentil) {
+        int[] histograma = mHistogramas[fila];
+        long total = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            total += histograma[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long objetivo = (total * percentil + 99) / 100;
+        long acumulado = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            acumulado += histograma[i];
+            if (acumulado >= objetivo) {
+                return i == CUBETAS - 1 ? mMaxNanos[fila] : (i + 1) * NANOS_CUBETA;
+            }
+        }
+        return mMaxNanos[fila];
+    }
+
+    /**
+     * apunta lo que ha tardado el motor en pintar su primer frame, no se borra al reiniciar
+     * @param nanos desde el onCreate del motor hasta el final del primer onDraw
+     */
+    public void registrarArranque(long nanos) {
+        mArranqueNanos = nanos;
+    }
+
+    /**
+     * escribe las metricas en la salida del dump
+     */
+    public void volcar(String prefijo, PrintWriter out) {
+        out.print(prefijo);
+        out.println("frames=" + mFrames + " fueraDePlazo=" + mFueraDePlazo
+                + " masDeUnVsync=" + mMasDeUnVsync
+                + (mArranqueNanos < 0 ? "" : String.format(Locale.US,
+                        " primerFrame=%.2fms", mArranqueNanos / 1e6)));
+        volcarFila(prefijo, out, "frame", FASES);
+        for (int i = 0; i < FASES; i++) {
+            volcarFila(prefijo, out, NOMBRES_FASES[i], i);
+        }
+        //el histograma del frame entero, solo las cubetas con datos
+        out.print(prefijo);
+        out.print("histograma(ms):");
+        int[] histograma = mHistogramas[FASES];
+        for (int i = 0; i < CUBETAS; i++) {
+            if (histograma[i] != 0) {
+                out.print(' ');
+                out.print(i == CUBETAS - 1
+                        ? ">64"
+                        : String.format(Locale.US, "%.2f", (i + 1) * NANOS_CUBETA / 1e6));
+                out.print('=');
+                out.print(histograma[i]);
+            }
+        }
+        out.println();
+    }
+
+    private void volcarFila(String prefijo, PrintWriter out, String nombre, int fila) {
+        long cuenta = mCuentas[fila] == 0 ? 1 : mCuentas[fila];
+        out.print(prefijo);
+        out.println(String.format(Locale.US,
+                "%-10s media=%.3fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.3fms",
+                nombre,
+                mTotalNanos[fila] / 1e6 / cuenta,
+                percentilNanos(fila, 50) / 1e6,
+                percentilNanos(fila, 90) / 1e6,
+                percentilNanos(fila, 99) / 1e6,
+                mMaxNanos[fila] / 1e6));
+    }
+
+    private void registrar(int fila, long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        int cubeta = (int) Math.min(nanos / NANOS_CUBETA, CUBETAS - 1);
+        mHistogramas[fila][cubeta]++;
+        mTotalNanos[fila] += nanos;
+        mCuentas[fila]++;
+        if (nanos > mMaxNanos[fila]) {
+            mMaxNanos[fila] = nanos;
+        }
+    }
+}
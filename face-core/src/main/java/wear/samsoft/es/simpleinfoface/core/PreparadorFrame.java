@@ -0,0 +1,131 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.core;
+
+/**
+ * Preparacion de un frame sin nada de Android: posicion de las manecillas, arco de los
+ * segundos, desplazamiento contra el quemado en ambiente y la lista de dibujo con todo lo que
+ * se va a pintar. El motor solo tiene que pintar lo que deja calculado, y fuera del reloj se
+ * puede lanzar igual para comprobar los frames y medir lo que tardan.
+ */
+public class PreparadorFrame {
+
+    //desplazamientos en pixeles que se van recorriendo, uno por minuto, x e y por pareja
+    private static final int[] DESPLAZAMIENTOS = {
+            0, 0, 2, 0, 2, 2, 0, 2, -2, 2, -2, 0, -2, -2, 0, -2, 2, -2
+    };
+    private static final int PASOS = DESPLAZAMIENTOS.length / 2;
+
+    //posicion de las manecillas en el frame
+    public final Tiempo tiempo = new Tiempo();
+    //extremos de las manecillas del frame, x en la posicion 0 e y en la 1
+    public final float[] extremoMin = new float[2];
+    public final float[] extremoHrs = new float[2];
+    //angulo final del arco de los segundos
+    public float finSec;
+    //desplazamiento contra el quemado de la pantalla, solo en ambiente
+    public int desplazamientoX;
+    public int desplazamientoY;
+
+    private Geometria mGeometria;
+    private final ListaDibujo mLista;
+    private boolean mProteccionQuemado;
+    private boolean mSegundos = true;
+
+    /**
+     * @param geometria ya configurada para la pantalla
+     * @param lista donde se graba cada frame
+     */
+    public PreparadorFrame(Geometria geometria, ListaDibujo lista) {
+        mGeometria = geometria;
+        mLista = lista;
+    }
+
+    /**
+     * cambia la geometria, por ejemplo al llegar los recursos de una pantalla nueva
+     */
+    public void setGeometria(Geometria geometria) {
+        mGeometria = geometria;
+    }
+
+    /**
+     * con proteccion contra quemado el frame de ambiente se desplaza un poco cada minuto
+     */
+    public void setProteccionQuemado(boolean proteccionQuemado) {
+        mProteccionQuemado = proteccionQuemado;
+    }
+
+    /**
+     * sin segundos (ahorro de bateria) el frame interactivo no lleva el arco y las manecillas
+     * se quedan en el minuto como en ambiente, asi solo cambia una vez por minuto
+     */
+    public void setSegundos(boolean segundos) {
+        mSegundos = segundos;
+    }
+
+    /**
+     * calcula el frame y graba su lista de dibujo
+     * @param fuente con la hora del frame ya actualizada
+     * @param ahoraMillis la hora del frame, para las estadisticas de la lista
+     * @param ambiente si el frame es de modo ambiente
+     * @param dia clave del dia del frame
+     * @param nivelBateria porcentaje de bateria o -1 si no hay lectura
+     * @param disposicion la disposicion de la pantalla
+     * @return true si lo que se veria en pantalla es distinto del frame anterior
+     */
+    public boolean preparar(FuenteTiempo fuente, long ahoraMillis, boolean ambiente, int dia,
+                            int nivelBateria, Disposicion disposicion) {
+        // Calculos de las posiciones de los segundos, minutos y horas, los angulos de las
+        // manecillas los resuelve la geometria con sus tablas. En ambiente y sin segundos las
+        // manecillas se quedan en el minuto, asi el frame solo cambia una vez por minuto
+        if (ambiente || !mSegundos) {
+            tiempo.desdeCampos(fuente.hora % 12, fuente.minuto, 0, 0);
+        } else {
+            fuente.descomponer(tiempo);
+        }
+        if (ambiente) {
+            int paso = (fuente.hora * 60 + fuente.minuto) % PASOS;
+            desplazamientoX = mProteccionQuemado ? DESPLAZAMIENTOS[paso * 2] : 0;
+            desplazamientoY = mProteccionQuemado ? DESPLAZAMIENTOS[paso * 2 + 1] : 0;
+        } else {
+            desplazamientoX = 0;
+            desplazamientoY = 0;
+        }
+        mGeometria.extremoMinutos(tiempo.minutos, extremoMin);
+        mGeometria.extremoHoras(tiempo.horas, extremoHrs);
+        //calculamos el angulo de fin del arco, la base del arco ya la tenemos calculada
+        finSec = tiempo.segundos * 6f;
+
+        //grabamos lo que se va a pintar con las coordenadas cuantizadas
+        float cx = disposicion.centerX + desplazamientoX;
+        float cy = disposicion.centerY + desplazamientoY;
+        mLista.empezar();
+        mLista.op(ListaDibujo.OP_CAPA, ambiente ? 1 : 0, dia,
+                disposicion.width, disposicion.height);
+        if (!ambiente) {
+            if (mSegundos) {
+                mLista.arco(finSec);
+            }
+            mLista.op(ListaDibujo.OP_FECHA, dia, 0, 0, 0);
+            mLista.op(ListaDibujo.OP_BATERIA, nivelBateria, 0, 0, 0);
+        }
+        mLista.linea(cx, cy,
+                extremoMin[0] + desplazamientoX, extremoMin[1] + desplazamientoY);
+        mLista.linea(cx, cy,
+                extremoHrs[0] + desplazamientoX, extremoHrs[1] + desplazamientoY);
+        return mLista.terminar(ahoraMillis);
+    }
+}
@@ -0,0 +1,208 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Tabla de disposiciones ya calculadas, guardada en un fichero binario pequenio. La clave es
+ * el tamanio de la pantalla, su forma y el inset inferior, asi cada motor nuevo (al elegir la
+ * caratula o en la vista previa) lee la disposicion en vez de volver a calcularla.
+ *
+ * El fichero lleva una cabecera con la version de la Disposicion, si no coincide se ignora
+ * entero y se vuelve a llenar.
+ */
+public class TablaDisposiciones {
+
+    //cabecera del fichero, "SIFD"
+    private static final int MAGIA = 0x53494644;
+
+    //pocas pantallas distintas en un mismo reloj, nos quedamos con las ultimas
+    private static final int MAX_ENTRADAS = 8;
+
+    //cada entrada es la clave y la disposicion escrita en binario
+    private static class Entrada {
+        int width;
+        int height;
+        boolean redonda;
+        int insetInferior;
+        byte[] datos;
+    }
+
+    //de la mas antigua a la mas reciente
+    private final ArrayList<Entrada> mEntradas = new ArrayList<Entrada>();
+
+    //contadores para el dumpsys
+    private int mAciertos;
+    private int mFallos;
+
+    /**
+     * busca una disposicion para la pantalla y la lee en destino
+     * @return true si estaba en la tabla, si no hay que calcularla y guardarla
+     */
+    public boolean buscar(int width, int height, boolean redonda, int insetInferior,
+                          Disposicion destino) {
+        Entrada entrada = entrada(width, height, redonda, insetInferior);
+        if (entrada != null) {
+            try {
+                destino.leer(new DataInputStream(new ByteArrayInputStream(entrada.datos)));
+                mAciertos++;
+                return true;
+            } catch (IOException e) {
+                //entrada corrupta, la quitamos y se calcula de nuevo
+                mEntradas.remove(entrada);
+            }
+        }
+        mFallos++;
+        return false;
+    }
+
+    /**
+     * guarda una disposicion ya calculada con su propia clave
+     */
+    public void guardar(Disposicion disposicion) {
+        Entrada entrada = entrada(disposicion.width, disposicion.height,
+                disposicion.redonda, disposicion.insetInferior);
+        if (entrada == null) {
+            entrada = new Entrada();
+            entrada.width = disposicion.width;
+            entrada.height = disposicion.height;
+            entrada.redonda = disposicion.redonda;
+            entrada.insetInferior = disposicion.insetInferior;
+            if (mEntradas.size() >= MAX_ENTRADAS) {
+                mEntradas.remove(0);
+            }
+        } else {
+            mEntradas.remove(entrada);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try {
+            disposicion.escribir(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            //en memoria no puede fallar
+            throw new IllegalStateException(e);
+        }
+        entrada.datos = bytes.toByteArray();
+        mEntradas.add(entrada);
+    }
+
+    /**
+     * carga la tabla de un fichero, si no existe o es de otra version se queda vacia
+     * @return true si se ha cargado
+     */
+    public boolean cargar(File fichero) {
+        mEntradas.clear();
+        if (!fichero.exists()) {
+            return false;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(fichero)));
+            if (in.readInt() != MAGIA || in.readInt() != Disposicion.VERSION) {
+                return false;
+            }
+            int n = Math.min(in.readInt(), MAX_ENTRADAS);
+            for (int i = 0; i < n; i++) {
+                Entrada entrada = new Entrada();
+                entrada.width = in.readInt();
+                entrada.height = in.readInt();
+                entrada.redonda = in.readBoolean();
+                entrada.insetInferior = in.readInt();
+                entrada.datos = new byte[in.readUnsignedShort()];
+                in.readFully(entrada.datos);
+                mEntradas.add(entrada);
+            }
+            return true;
+        } catch (IOException e) {
+            //fichero cortado o corrupto, empezamos de cero
+            mEntradas.clear();
+            return false;
+        } finally {
+            cerrar(in);
+        }
+    }
+
+    /**
+     * escribe la tabla en un fichero temporal y lo renombra, asi nunca queda a medias
+     * @return true si se ha escrito
+     */
+    public boolean escribir(File fichero) {
+        File temporal = new File(fichero.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporal)));
+            out.writeInt(MAGIA);
+            out.writeInt(Disposicion.VERSION);
+            out.writeInt(mEntradas.size());
+            for (Entrada entrada : mEntradas) {
+                out.writeInt(entrada.width);
+                out.writeInt(entrada.height);
+                out.writeBoolean(entrada.redonda);
+                out.writeInt(entrada.insetInferior);
+                out.writeShort(entrada.datos.length);
+                out.write(entrada.datos);
+            }
+            out.close();
+            out = null;
+            return temporal.renameTo(fichero);
+        } catch (IOException e) {
+            temporal.delete();
+            return false;
+        } finally {
+            cerrar(out);
+        }
+    }
+
+    public int getAciertos() {
+        return mAciertos;
+    }
+
+    public int getFallos() {
+        return mFallos;
+    }
+
+    private Entrada entrada(int width, int height, boolean redonda, int insetInferior) {
+        for (int i = 0; i < mEntradas.size(); i++) {
+            Entrada entrada = mEntradas.get(i);
+            if (entrada.width == width && entrada.height == height
+                    && entrada.redonda == redonda && entrada.insetInferior == insetInferior) {
+                return entrada;
+            }
+        }
+        return null;
+    }
+
+    private static void cerrar(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                //no hay nada que hacer
+            }
+        }
+    }
+}
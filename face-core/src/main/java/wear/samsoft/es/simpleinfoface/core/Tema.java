@@ -0,0 +1,118 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+
+package wear.samsoft.es.simpleinfoface.core;
+
+/**
+ * Un tema de colores y brillo de la caratula, con su variante para el modo ambiente. Es
+ * inmutable, el motor lo compila una vez en un PaqueteRecursos con sus pinceles, shaders y
+ * sprites ya pintados, y cambiar de tema es tomar otro paquete en vez de tocar los pinceles.
+ *
+ * Los colores van en ARGB como los de android.graphics.Color. El tema lo elige el usuario en
+ * la app del movil y llega al reloj por la Data API con la RUTA_DATOS y la CLAVE_DATOS.
+ */
+public final class Tema {
+
+    //donde deja la app del movil el tema elegido para que lo lea el reloj
+    public static final String RUTA_DATOS = "/simpleinfoface/tema";
+    public static final String CLAVE_DATOS = "tema";
+
+    //el de siempre, cyan y blanco
+    public static final Tema CYAN = new Tema("cyan", "Cyan",
+            0xFF00FFFF, 0xFFFFFFFF, 0xFF00FFFF, 0xFFFFFFFF, 0xFF00FFFF,
+            0xFF00FF00, 0xFFFF0000, 10f, 8f, 0xFFFFFFFF, 0xFF444444);
+    public static final Tema AMBAR = new Tema("ambar", "Ambar",
+            0xFFFFA000, 0xFFFFFFFF, 0xFFFFB300, 0xFFFFF8E1, 0xFFFFB300,
+            0xFFFFD54F, 0xFFE65100, 10f, 8f, 0xFFFFFFFF, 0xFF444444);
+    public static final Tema VERDE = new Tema("verde", "Verde",
+            0xFF00E676, 0xFFFFFFFF, 0xFF69F0AE, 0xFFFFFFFF, 0xFF00E676,
+            0xFF00E676, 0xFFFFEA00, 10f, 8f, 0xFFFFFFFF, 0xFF444444);
+    //magenta con mas brillo en los segundos y las manecillas
+    public static final Tema NEON = new Tema("neon", "Neon",
+            0xFFFF40FF, 0xFFFFFFFF, 0xFFFF40FF, 0xFFFFFFFF, 0xFF40C4FF,
+            0xFF40C4FF, 0xFFFF40FF, 14f, 11f, 0xFFFFFFFF, 0xFF444444);
+
+    //todos los temas en el orden en el que se ofrecen
+    public static final Tema[] TEMAS = {CYAN, AMBAR, VERDE, NEON};
+
+    //identificador que se guarda y se envia, y nombre para la app del movil
+    public final String id;
+    public final String nombre;
+
+    //modo interactivo
+    public final int colorSegundos;
+    public final int colorMinutos;
+    public final int colorHoras;
+    //lo blanco de la fecha, el porcentaje de bateria, los marcadores y el marco de la bateria
+    public final int colorTexto;
+    //lo cyan de la fecha, el casillero de la fecha va en degradado de este color al del texto
+    public final int colorResalte;
+    //degradado del arco de la bateria, de lleno a vacio
+    public final int colorBateriaLlena;
+    public final int colorBateriaVacia;
+    //radios del brillo del arco de los segundos y de las manecillas
+    public final float brilloSegundos;
+    public final float brilloManecillas;
+
+    //modo ambiente, sin brillo. La de las horas en gris oscuro (el DKGRAY de siempre) en
+    //todos los temas, es lo que mas tiempo esta en pantalla y asi gasta menos la OLED y se
+    //marca menos. Con bajo bit las dos manecillas van en blanco
+    public final int ambienteMinutos;
+    public final int ambienteHoras;
+
+    private Tema(String id, String nombre, int colorSegundos, int colorMinutos, int colorHoras,
+                 int colorTexto, int colorResalte, int colorBateriaLlena, int colorBateriaVacia,
+                 float brilloSegundos, float brilloManecillas,
+                 int ambienteMinutos, int ambienteHoras) {
+        this.id = id;
+        this.nombre = nombre;
+        this.colorSegundos = colorSegundos;
+        this.colorMinutos = colorMinutos;
+        this.colorHoras = colorHoras;
+        this.colorTexto = colorTexto;
+        this.colorResalte = colorResalte;
+        this.colorBateriaLlena = colorBateriaLlena;
+        this.colorBateriaVacia = colorBateriaVacia;
+        this.brilloSegundos = brilloSegundos;
+        this.brilloManecillas = brilloManecillas;
+        this.ambienteMinutos = ambienteMinutos;
+        this.ambienteHoras = ambienteHoras;
+    }
+
+    /**
+     * busca un tema por su identificador
+     * @param id puede ser null
+     * @return el tema o CYAN si no hay ninguno con ese identificador
+     */
+    public static Tema porId(String id) {
+        for (Tema tema : TEMAS) {
+            if (tema.id.equals(id)) {
+                return tema;
+            }
+        }
+        return CYAN;
+    }
+
+    /**
+     * anade a la huella todo lo que cambia el tema en un bitmap pintado
+     */
+    public Huella huella(Huella huella) {
+        return huella.mas(colorSegundos).mas(colorMinutos).mas(colorHoras).mas(colorTexto)
+                .mas(colorResalte).mas(colorBateriaLlena).mas(colorBateriaVacia)
+                .mas(brilloSegundos).mas(brilloManecillas)
+                .mas(ambienteMinutos).mas(ambienteHoras);
+    }
+}
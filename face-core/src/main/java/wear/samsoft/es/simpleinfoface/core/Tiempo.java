@@ -0,0 +1,52 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.core;
+
+import java.util.Calendar;
+
+/**
+ * Descomposicion del tiempo en la posicion de cada manecilla. Los segundos, minutos y horas
+ * llevan la fraccion de la unidad inferior para que las manecillas avancen de forma continua.
+ */
+public class Tiempo {
+
+    //segundos con fraccion, de 0 a 60
+    public float segundos;
+    //minutos con fraccion, de 0 a 60
+    public float minutos;
+    //horas con fraccion en formato de 12 horas, de 0 a 12
+    public float horas;
+
+    /**
+     * descompone a partir de los campos de la hora local
+     * @param hora de 0 a 11
+     */
+    public void desdeCampos(int hora, int minuto, int segundo, int milisegundo) {
+        segundos = segundo + milisegundo / 1000f;
+        minutos = minuto + segundos / 60f;
+        horas = hora + minutos / 60f;
+    }
+
+    /**
+     * descompone desde un Calendar, que ya tiene que tener puesta la hora
+     */
+    public void desdeCalendar(Calendar calendar) {
+        desdeCampos(calendar.get(Calendar.HOUR),
+                calendar.get(Calendar.MINUTE),
+                calendar.get(Calendar.SECOND),
+                calendar.get(Calendar.MILLISECOND));
+    }
+}
@@ -0,0 +1,122 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Comprueba que preparar un frame no crea objetos: hora con FuenteTiempo, manecillas con la
+ * Geometria y la lista de dibujo, igual que lo hace el motor antes de cada onDraw. Se cuentan
+ * los bytes que reserva el hilo durante miles de frames, que tienen que ser cero. El frame
+ * entero, con el pintado y las metricas, lo mide AsignacionesFrameTest en el modulo wear.
+ */
+public class AsignacionesTest {
+
+    private static final TimeZone ZONA = TimeZone.getTimeZone("Europe/Madrid");
+    private static final int FRAMES = 20000;
+    private static final int FRAMES_CALENTAMIENTO = 2000;
+
+    //2015-10-24 23:00 en Madrid, los frames cruzan la medianoche
+    private static final long ANTES_MEDIANOCHE = 1445720400000L;
+    //2015-10-25 00:00 en Madrid, los minutos de ambiente cruzan el cambio a horario de invierno
+    private static final long ANTES_CAMBIO_HORA = 1445724000000L;
+
+    private com.sun.management.ThreadMXBean mHilos;
+    private long mId;
+
+    private final Disposicion mDisposicion = new Disposicion();
+    private final Geometria mGeometria = new Geometria();
+    private final ListaDibujo mLista = new ListaDibujo();
+    private final PreparadorFrame mPreparador = new PreparadorFrame(mGeometria, mLista);
+    private final FuenteTiempo mFuente = new FuenteTiempo(ZONA);
+
+    @Before
+    public void preparar() {
+        //solo las JVM de HotSpot cuentan lo que reserva cada hilo
+        assumeTrue(ManagementFactory.getThreadMXBean()
+                instanceof com.sun.management.ThreadMXBean);
+        mHilos = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(mHilos.isThreadAllocatedMemorySupported());
+        mHilos.setThreadAllocatedMemoryEnabled(true);
+        mId = Thread.currentThread().getId();
+
+        mDisposicion.calcular(320, 320, true, 0);
+        mGeometria.configurar(mDisposicion.centerX, mDisposicion.centerY,
+                mDisposicion.width, mDisposicion.height,
+                mDisposicion.longMin, mDisposicion.longHrs);
+    }
+
+    @Test
+    public void interactivoSinAsignaciones() {
+        mPreparador.setSegundos(true);
+        assertEquals(0L, medir(ANTES_MEDIANOCHE, 1000L, false));
+    }
+
+    @Test
+    public void interactivoSuaveSinAsignaciones() {
+        //a 60 frames por segundo el arco de los segundos cambia en casi todos
+        mPreparador.setSegundos(true);
+        assertEquals(0L, medir(ANTES_MEDIANOCHE, 16L, false));
+    }
+
+    @Test
+    public void ahorroSinAsignaciones() {
+        mPreparador.setSegundos(false);
+        assertEquals(0L, medir(ANTES_MEDIANOCHE, 1000L, false));
+    }
+
+    @Test
+    public void ambienteSinAsignaciones() {
+        mPreparador.setProteccionQuemado(true);
+        assertEquals(0L, medir(ANTES_CAMBIO_HORA, 60000L, true));
+    }
+
+    /**
+     * prepara los frames de calentamiento y despues los medidos, avanzando paso en cada uno
+     * @return los bytes reservados por los frames medidos
+     */
+    private long medir(long desde, long paso, boolean ambiente) {
+        long ahora = desde;
+        for (int i = 0; i < FRAMES_CALENTAMIENTO; i++) {
+            ahora = frame(ahora + paso, ambiente);
+        }
+        //lo que reserva la propia medida, para descontarlo
+        long base = mHilos.getThreadAllocatedBytes(mId);
+        long vacio = mHilos.getThreadAllocatedBytes(mId) - base;
+
+        //volvemos al principio para que los frames medidos pasen por los mismos cambios
+        ahora = desde;
+        mLista.invalidar();
+        long inicio = mHilos.getThreadAllocatedBytes(mId);
+        for (int i = 0; i < FRAMES; i++) {
+            ahora = frame(ahora + paso, ambiente);
+        }
+        return mHilos.getThreadAllocatedBytes(mId) - inicio - vacio;
+    }
+
+    private long frame(long ahora, boolean ambiente) {
+        mFuente.actualizar(ahora);
+        mPreparador.preparar(mFuente, ahora, ambiente, (int) mFuente.dia, 73, mDisposicion);
+        return ahora;
+    }
+}
@@ -0,0 +1,219 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compara la hora que descompone FuenteTiempo con la de GregorianCalendar en varias zonas
+ * horarias, alrededor de los cambios de horario (el adelanto de primavera y el retraso de
+ * otonio) y de la medianoche local. La misma fuente se va actualizando hacia delante como en
+ * el reloj, asi tambien se prueba que el desfase guardado se renueva en el cambio.
+ */
+public class FuenteTiempoTest {
+
+    private static final long MS_SEGUNDO = 1000L;
+    private static final long MS_MINUTO = 60L * MS_SEGUNDO;
+    private static final long MS_HORA = 60L * MS_MINUTO;
+    private static final long MS_DIA = 24L * MS_HORA;
+
+    //Lord_Howe cambia media hora, Chatham tiene desfase de 12:45, Sao_Paulo cambiaba a
+    //medianoche (el dia empieza a la 01:00) y Kolkata no tiene cambios
+    private static final String[] ZONAS = {
+            "Europe/Madrid", "America/New_York", "Australia/Lord_Howe", "Australia/Sydney",
+            "Pacific/Chatham", "America/Sao_Paulo", "Asia/Kolkata", "UTC"
+    };
+
+    //2015-01-01 y 2017-01-01 en UTC, dos anios con todos sus cambios
+    private static final long DESDE = 1420070400000L;
+    private static final long HASTA = 1483228800000L;
+    private static final long PASO_MEDIANOCHE = 10L * MS_MINUTO;
+
+    private static final Calendar UTC = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+
+    @Test
+    public void cambiosDeHorario() {
+        int cambios = 0;
+        boolean mediaHora = false;
+        for (String id : ZONAS) {
+            TimeZone zona = TimeZone.getTimeZone(id);
+            for (long cambio : cambios(zona)) {
+                cambios++;
+                int salto = zona.getOffset(cambio) - zona.getOffset(cambio - 1);
+                mediaHora |= Math.abs(salto) == 30L * MS_MINUTO;
+                //a cada segundo dos horas antes y despues, y a cada milisegundo en el cambio
+                recorrer(zona, cambio - 2 * MS_HORA, cambio + 2 * MS_HORA, MS_SEGUNDO);
+                recorrer(zona, cambio - 2 * MS_SEGUNDO, cambio + 2 * MS_SEGUNDO, 1L);
+            }
+        }
+        //Madrid, Nueva York, Lord_Howe, Sidney, Chatham y Sao Paulo cambian dos veces al anio
+        assertTrue("cambios encontrados " + cambios, cambios >= 20);
+        assertTrue("Lord_Howe cambia media hora", mediaHora);
+    }
+
+    @Test
+    public void medianoche() {
+        int dias = 0;
+        for (String id : ZONAS) {
+            TimeZone zona = TimeZone.getTimeZone(id);
+            Calendar calendar = new GregorianCalendar(zona);
+            FuenteTiempo fuente = new FuenteTiempo(zona);
+            long anterior = DESDE;
+            long diaAnterior = Long.MIN_VALUE;
+            //los dos anios a saltos de diez minutos con la misma fuente, como en ambiente
+            for (long t = DESDE; t < HASTA; t += PASO_MEDIANOCHE) {
+                comprobar(fuente, calendar, t);
+                long dia = fuente.dia;
+                if (diaAnterior != Long.MIN_VALUE && dia != diaAnterior) {
+                    //el dia ha cambiado en (anterior, t], miramos la medianoche mas de cerca
+                    long medianoche = medianoche(calendar, anterior, t);
+                    recorrer(zona, medianoche - 2 * MS_SEGUNDO,
+                            medianoche + 2 * MS_SEGUNDO, 10L);
+                    comprobar(fuente, calendar, medianoche - 1);
+                    comprobar(fuente, calendar, medianoche);
+                    comprobar(fuente, calendar, t);
+                    dias++;
+                }
+                diaAnterior = dia;
+                anterior = t;
+            }
+        }
+        //cada zona cambia de dia una vez al dia en los 731 dias, salvo en el borde del recorrido
+        assertTrue("dias " + dias, dias >= ZONAS.length * 730);
+    }
+
+    @Test
+    public void medianocheAntesDe1970() {
+        TimeZone zona = TimeZone.getTimeZone("America/New_York");
+        //1969-12-31 23:59:59.500 en Nueva York y el milisegundo siguiente a medianoche
+        recorrer(zona, 18000000L - 1500L, 18000000L + 1500L, 1L);
+        recorrer(zona, -MS_DIA * 400, -MS_DIA * 360, MS_HORA);
+    }
+
+    @Test
+    public void cambioDeZona() {
+        FuenteTiempo fuente = new FuenteTiempo(TimeZone.getTimeZone("Europe/Madrid"));
+        fuente.actualizar(DESDE);
+        TimeZone zona = TimeZone.getTimeZone("Australia/Lord_Howe");
+        fuente.setZona(zona);
+        Calendar calendar = new GregorianCalendar(zona);
+        for (long t = DESDE; t < DESDE + 2 * MS_DIA; t += 37L * MS_SEGUNDO) {
+            comprobar(fuente, calendar, t);
+        }
+    }
+
+    @Test
+    public void desfaseGuardado() {
+        //un anio minuto a minuto solo tiene que pedir el desfase en cada cambio
+        TimeZone zona = TimeZone.getTimeZone("Europe/Madrid");
+        FuenteTiempo fuente = new FuenteTiempo(zona);
+        long hasta = DESDE + 365L * MS_DIA;
+        for (long t = DESDE; t < hasta; t += MS_MINUTO) {
+            fuente.actualizar(t);
+        }
+        int cambios = 0;
+        for (long cambio : cambios(zona)) {
+            if (cambio < hasta) {
+                cambios++;
+            }
+        }
+        assertEquals(2, cambios);
+        assertEquals(cambios + 1, fuente.getRecalculos());
+    }
+
+    /**
+     * los instantes en los que cambia el desfase de la zona entre DESDE y HASTA
+     */
+    private static List<Long> cambios(TimeZone zona) {
+        List<Long> cambios = new ArrayList<Long>();
+        for (long t = DESDE; t < HASTA; t += MS_HORA) {
+            long despues = t + MS_HORA;
+            if (zona.getOffset(t) != zona.getOffset(despues)) {
+                long antes = t;
+                while (despues - antes > 1) {
+                    long medio = antes + (despues - antes) / 2;
+                    if (zona.getOffset(medio) != zona.getOffset(t)) {
+                        despues = medio;
+                    } else {
+                        antes = medio;
+                    }
+                }
+                cambios.add(despues);
+            }
+        }
+        return cambios;
+    }
+
+    /**
+     * compara a cada paso entre desde y hasta con una fuente nueva que se va actualizando
+     */
+    private static void recorrer(TimeZone zona, long desde, long hasta, long paso) {
+        FuenteTiempo fuente = new FuenteTiempo(zona);
+        Calendar calendar = new GregorianCalendar(zona);
+        for (long t = desde; t <= hasta; t += paso) {
+            comprobar(fuente, calendar, t);
+        }
+    }
+
+    private static void comprobar(FuenteTiempo fuente, Calendar calendar, long t) {
+        fuente.actualizar(t);
+        calendar.setTimeInMillis(t);
+        String donde = calendar.getTimeZone().getID() + " " + t;
+        assertEquals(donde, calendar.get(Calendar.HOUR_OF_DAY), fuente.hora);
+        assertEquals(donde, calendar.get(Calendar.MINUTE), fuente.minuto);
+        assertEquals(donde, calendar.get(Calendar.SECOND), fuente.segundo);
+        assertEquals(donde, calendar.get(Calendar.MILLISECOND), fuente.milisegundo);
+        assertEquals(donde, diaLocal(calendar), fuente.dia);
+    }
+
+    /**
+     * el primer instante de (antes, despues] con la fecha local de despues
+     */
+    private static long medianoche(Calendar calendar, long antes, long despues) {
+        calendar.setTimeInMillis(despues);
+        long dia = diaLocal(calendar);
+        while (despues - antes > 1) {
+            long medio = antes + (despues - antes) / 2;
+            calendar.setTimeInMillis(medio);
+            if (diaLocal(calendar) == dia) {
+                despues = medio;
+            } else {
+                antes = medio;
+            }
+        }
+        return despues;
+    }
+
+    /**
+     * dias desde epoch de la fecha local del calendar, la medianoche UTC de esa fecha
+     */
+    private static long diaLocal(Calendar calendar) {
+        UTC.clear();
+        UTC.set(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH),
+                calendar.get(Calendar.DAY_OF_MONTH));
+        UTC.set(Calendar.ERA, calendar.get(Calendar.ERA));
+        return UTC.getTimeInMillis() / MS_DIA;
+    }
+}
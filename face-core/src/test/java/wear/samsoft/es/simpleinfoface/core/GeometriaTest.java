@@ -0,0 +1,130 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Comprueba la precision de las tablas de la Geometria contra Math.sin y Math.cos, y que las
+ * manecillas y los marcadores salen donde los pintaba el onDraw original con Math.
+ */
+public class GeometriaTest {
+
+    private static final float TWO_PI = (float) Math.PI * 2f;
+
+    //interpolar en pasos de una decima de grado, con el redondeo del float, da unos 6e-7
+    private static final double ERROR_SENO = 1e-6;
+    //en pixeles, las manecillas y marcadores tienen que caer en el mismo sitio
+    private static final double ERROR_PIXELES = 0.01;
+
+    private static final int[][] PANTALLAS = {
+            {280, 280}, {320, 320}, {360, 360}, {400, 400}, {320, 290}
+    };
+
+    @Test
+    public void senoYCoseno() {
+        double maxSeno = 0;
+        double maxCoseno = 0;
+        //varias vueltas, tambien hacia atras, con pasos que no caen en las entradas de la tabla
+        for (int i = -3000000; i <= 3000000; i++) {
+            float vueltas = i / 1000003f;
+            double radianes = vueltas * 2d * Math.PI;
+            maxSeno = Math.max(maxSeno, Math.abs(Geometria.seno(vueltas) - Math.sin(radianes)));
+            maxCoseno = Math.max(maxCoseno,
+                    Math.abs(Geometria.coseno(vueltas) - Math.cos(radianes)));
+        }
+        assertTrue("error del seno " + maxSeno, maxSeno < ERROR_SENO);
+        assertTrue("error del coseno " + maxCoseno, maxCoseno < ERROR_SENO);
+    }
+
+    @Test
+    public void manecillas() {
+        float[] extremo = new float[2];
+        for (int[] pantalla : PANTALLAS) {
+            Geometria geometria = configurada(pantalla[0], pantalla[1]);
+            Disposicion d = disposicion(pantalla[0], pantalla[1]);
+            double maxError = 0;
+            //cada milisegundo de la hora para los minutos y cada 100ms de 12 horas para las horas
+            for (int ms = 0; ms <= 3600000; ms++) {
+                float minutos = ms / 60000f;
+                geometria.extremoMinutos(minutos, extremo);
+                float amin = minutos / 60f * TWO_PI;
+                maxError = Math.max(maxError, error(extremo,
+                        d.centerX + (float) Math.sin(amin) * d.longMin,
+                        d.centerY + (float) -Math.cos(amin) * d.longMin));
+            }
+            for (int ms = 0; ms <= 43200000; ms += 100) {
+                float horas = ms / 3600000f;
+                geometria.extremoHoras(horas, extremo);
+                float ahrs = horas / 12f * TWO_PI;
+                maxError = Math.max(maxError, error(extremo,
+                        d.centerX + (float) Math.sin(ahrs) * d.longHrs,
+                        d.centerY + (float) -Math.cos(ahrs) * d.longHrs));
+            }
+            assertTrue(pantalla[0] + "x" + pantalla[1] + " error de las manecillas " + maxError,
+                    maxError < ERROR_PIXELES);
+        }
+    }
+
+    @Test
+    public void marcadores() {
+        for (int[] pantalla : PANTALLAS) {
+            int width = pantalla[0];
+            int height = pantalla[1];
+            Geometria geometria = configurada(width, height);
+            Disposicion d = disposicion(width, height);
+            double maxError = 0;
+            //las mismas cuentas que hacia el onDraw original para cada marcador
+            for (int i = 1; i <= 12; i++) {
+                float ahrsAux = i / 12f * TWO_PI;
+                float hrXAux = (float) Math.sin(ahrsAux) * (width - d.centerX - 15f);
+                float hrYAux = (float) -Math.cos(ahrsAux) * (height - d.centerY - 15f);
+                float hrXAuxPrima = (float) Math.sin(ahrsAux) * (width - d.centerX - 25f);
+                float hrYAuxPrima = (float) -Math.cos(ahrsAux) * (height - d.centerY - 25f);
+                int m = (i - 1) * 4;
+                maxError = Math.max(maxError, Math.max(
+                        error(geometria.marcadores, m, d.centerX + hrXAux, d.centerY + hrYAux),
+                        error(geometria.marcadores, m + 2,
+                                d.centerX + hrXAuxPrima, d.centerY + hrYAuxPrima)));
+            }
+            assertTrue(width + "x" + height + " error de los marcadores " + maxError,
+                    maxError < ERROR_PIXELES);
+        }
+    }
+
+    private static Disposicion disposicion(int width, int height) {
+        Disposicion disposicion = new Disposicion();
+        disposicion.calcular(width, height);
+        return disposicion;
+    }
+
+    private static Geometria configurada(int width, int height) {
+        Disposicion d = disposicion(width, height);
+        Geometria geometria = new Geometria();
+        geometria.configurar(d.centerX, d.centerY, d.width, d.height, d.longMin, d.longHrs);
+        return geometria;
+    }
+
+    private static double error(float[] punto, float x, float y) {
+        return error(punto, 0, x, y);
+    }
+
+    private static double error(float[] puntos, int i, float x, float y) {
+        return Math.hypot(puntos[i] - x, puntos[i + 1] - y);
+    }
+}
@@ -0,0 +1,80 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Comprueba la histeresis del ahorro: se entra en UMBRAL_AHORRO, se sale en
+ * UMBRAL_SALIDA_AHORRO, y entre los dos se sigue en la que estaba aunque pase por ambiente.
+ */
+public class GobernadorFramesTest {
+
+    private static final long AHORA = 1444000000000L;
+
+    @Test
+    public void histeresis() {
+        GobernadorFrames gobernador = new GobernadorFrames(AHORA);
+        gobernador.elegir(17, false, false, AHORA);
+        assertEquals(GobernadorFrames.POLITICA_NORMAL, gobernador.getPolitica());
+        gobernador.elegir(15, false, false, AHORA);
+        assertEquals(GobernadorFrames.POLITICA_AHORRO, gobernador.getPolitica());
+        gobernador.elegir(19, false, false, AHORA);
+        assertEquals(GobernadorFrames.POLITICA_AHORRO, gobernador.getPolitica());
+        gobernador.elegir(20, false, false, AHORA);
+        assertEquals(GobernadorFrames.POLITICA_NORMAL, gobernador.getPolitica());
+        gobernador.elegir(16, false, false, AHORA);
+        assertEquals(GobernadorFrames.POLITICA_NORMAL, gobernador.getPolitica());
+    }
+
+    @Test
+    public void ahorroDespuesDeAmbiente() {
+        GobernadorFrames gobernador = new GobernadorFrames(AHORA);
+        gobernador.elegir(15, false, false, AHORA);
+        assertEquals(GobernadorFrames.POLITICA_AHORRO, gobernador.getPolitica());
+        //la bateria sube un poco en ambiente pero no llega a la salida del ahorro
+        gobernador.elegir(17, false, true, AHORA + 60000L);
+        assertEquals(GobernadorFrames.POLITICA_AMBIENTE, gobernador.getPolitica());
+        gobernador.elegir(17, false, false, AHORA + 120000L);
+        assertEquals(GobernadorFrames.POLITICA_AHORRO, gobernador.getPolitica());
+        assertFalse(gobernador.conSegundos());
+        assertFalse(gobernador.conBrillo());
+    }
+
+    @Test
+    public void entraEnAhorroDuranteAmbiente() {
+        GobernadorFrames gobernador = new GobernadorFrames(AHORA);
+        gobernador.elegir(30, false, false, AHORA);
+        gobernador.elegir(14, false, true, AHORA + 60000L);
+        gobernador.elegir(17, false, false, AHORA + 120000L);
+        assertEquals(GobernadorFrames.POLITICA_AHORRO, gobernador.getPolitica());
+    }
+
+    @Test
+    public void cargarSaleDelAhorro() {
+        GobernadorFrames gobernador = new GobernadorFrames(AHORA);
+        gobernador.elegir(15, false, false, AHORA);
+        gobernador.elegir(16, true, false, AHORA + 60000L);
+        assertEquals(GobernadorFrames.POLITICA_CARGANDO, gobernador.getPolitica());
+        assertTrue(gobernador.conSegundos());
+        gobernador.elegir(17, false, false, AHORA + 120000L);
+        assertEquals(GobernadorFrames.POLITICA_NORMAL, gobernador.getPolitica());
+    }
+}
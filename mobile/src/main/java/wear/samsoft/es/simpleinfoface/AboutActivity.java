@@ -21,24 +21,91 @@ limitations under the License.
 package wear.samsoft.es.simpleinfoface;
 
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.net.Uri;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.RadioButton;
+import android.widget.RadioGroup;
 
 import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.Wearable;
 
+import wear.samsoft.es.simpleinfoface.core.Tema;
+
 public class AboutActivity extends AppCompatActivity {
 
+    //preferencias del movil donde recordamos el tema elegido
+    private static final String PREFERENCIAS = "simpleinfoface";
+    private static final String PREF_TEMA = "tema";
+
+    //cliente para publicar el tema en la Data API, le llega al reloj aunque ahora no este
+    //conectado
+    private GoogleApiClient mCliente;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_about);
 
+        mCliente = new GoogleApiClient.Builder(this)
+                .addApi(Wearable.API)
+                .build();
+        mostrarTemas();
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        mCliente.connect();
+    }
+
+    @Override
+    protected void onStop() {
+        mCliente.disconnect();
+        super.onStop();
+    }
+
+    /**
+     * un boton por cada tema de face-core, marcado el que se eligio la ultima vez
+     */
+    private void mostrarTemas() {
+        RadioGroup grupo = (RadioGroup) findViewById(R.id.temas);
+        Tema elegido = Tema.porId(getSharedPreferences(PREFERENCIAS, MODE_PRIVATE)
+                .getString(PREF_TEMA, null));
+        for (int i = 0; i < Tema.TEMAS.length; i++) {
+            RadioButton boton = new RadioButton(this);
+            //el id es la posicion del tema mas uno, los ids de las vistas tienen que ser
+            //positivos
+            boton.setId(i + 1);
+            boton.setText(Tema.TEMAS[i].nombre);
+            grupo.addView(boton);
+            if (Tema.TEMAS[i] == elegido) {
+                grupo.check(boton.getId());
+            }
+        }
+        //despues de marcar el elegido para no volver a enviarlo al abrir la pantalla
+        grupo.setOnCheckedChangeListener(new RadioGroup.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(RadioGroup group, int checkedId) {
+                elegirTema(Tema.TEMAS[checkedId - 1]);
+            }
+        });
+    }
 
+    /**
+     * guarda el tema y lo publica para el reloj, alli lo recoge el ReceptorTemas
+     */
+    private void elegirTema(Tema tema) {
+        SharedPreferences preferencias = getSharedPreferences(PREFERENCIAS, MODE_PRIVATE);
+        preferencias.edit().putString(PREF_TEMA, tema.id).apply();
+        PutDataMapRequest peticion = PutDataMapRequest.create(Tema.RUTA_DATOS);
+        peticion.getDataMap().putString(Tema.CLAVE_DATOS, tema.id);
+        Wearable.DataApi.putDataItem(mCliente, peticion.asPutDataRequest());
     }
 
 
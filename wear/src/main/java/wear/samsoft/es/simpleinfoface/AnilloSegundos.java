@@ -0,0 +1,153 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+
+package wear.samsoft.es.simpleinfoface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.RectF;
+
+/**
+ * Arco de los segundos hecho con 60 segmentos ya calculados, uno por segundo, en vez de un
+ * drawArc con DashPathEffect y BlurMaskFilter sobre el arco entero en cada frame.
+ *
+ * Los segmentos encendidos se van pintando en un bitmap fuera de pantalla: en cada segundo
+ * solo se anade el segmento nuevo encima de los que ya estaban y al empezar el minuto se
+ * borra. El frame solo vuelca el bitmap. En los modos fluidos el trozo del segundo en curso
+ * se pinta aparte en cada frame, es un arco corto.
+ *
+ * El brillo es OUTER, por dentro del trazo no se pinta nada. Pintando el arco entero el
+ * brillo de un segmento no entra en los demas, asi que al anadir uno se borra el interior de
+ * ese y del anterior, que es hasta donde llega su brillo.
+ *
+ * Lo configura el hilo de preparacion con el RecursosFrame, despues solo lo usa el hilo
+ * principal. El bitmap es una entrada de la CacheBitmaps, si la suelta se pintan los segmentos
+ * directamente en pantalla hasta que lleguen unos recursos nuevos.
+ */
+class AnilloSegundos {
+
+    private static final int SEGUNDOS = 60;
+    private static final float GRADOS_SEGUNDO = 360f / SEGUNDOS;
+    //hueco en pixeles entre un segmento y el siguiente
+    private static final float HUECO = 4f;
+
+    private final CacheBitmaps mCache;
+    private CacheBitmaps.Entrada mEntrada;
+    private Canvas mCanvas;
+
+    //el segmento de cada segundo, desde las 12 en el sentido de las agujas
+    private final Path[] mSegmentos = new Path[SEGUNDOS];
+    private final RectF mOval = new RectF();
+    //grados que ocupa cada segmento sin el hueco
+    private float mBarrido;
+    //el pincel del arco con su brillo y el que borra el interior de los segmentos
+    private Paint mPincel;
+    private final Paint mPincelBorrar = new Paint();
+
+    //segmentos que tiene pintados el bitmap
+    private int mPintados;
+
+    AnilloSegundos(CacheBitmaps cache) {
+        mCache = cache;
+        mPincelBorrar.setStyle(Paint.Style.STROKE);
+        mPincelBorrar.setAntiAlias(true);
+        mPincelBorrar.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+    }
+
+    /**
+     * calcula los segmentos y toma el bitmap vacio, en el hilo de preparacion
+     * @param oval la base del arco
+     * @param pincel el pincel del arco, con su grosor, color y brillo
+     */
+    void configurar(RectF oval, Paint pincel, int width, int height) {
+        mOval.set(oval);
+        mPincel = pincel;
+        mPincelBorrar.setStrokeWidth(pincel.getStrokeWidth());
+        float radio = oval.width() / 2f;
+        mBarrido = GRADOS_SEGUNDO - (float) Math.toDegrees(HUECO / radio);
+        for (int i = 0; i < SEGUNDOS; i++) {
+            Path segmento = new Path();
+            segmento.addArc(mOval, -90f + i * GRADOS_SEGUNDO, mBarrido);
+            mSegmentos[i] = segmento;
+        }
+        mEntrada = mCache.asegurar(mEntrada, width, height, CacheBitmaps.USO_INTERACTIVO);
+        Bitmap bitmap = mCache.usar(mEntrada);
+        mCanvas = new Canvas(bitmap);
+        bitmap.eraseColor(0);
+        mPintados = 0;
+    }
+
+    /**
+     * @return true si la cache no ha soltado el bitmap
+     */
+    boolean vigente() {
+        return CacheBitmaps.vigente(mEntrada);
+    }
+
+    /**
+     * pinta el arco hasta el angulo del frame
+     * @param finSec angulo final del arco desde las 12, seis grados por segundo
+     */
+    void dibujar(Canvas canvas, float finSec) {
+        int segundos = Math.max(0, Math.min(SEGUNDOS, (int) (finSec / GRADOS_SEGUNDO)));
+        Bitmap bitmap = mCache.usar(mEntrada);
+        if (bitmap == null) {
+            //sin bitmap pintamos los segmentos encendidos uno a uno
+            for (int i = 0; i < segundos; i++) {
+                canvas.drawPath(mSegmentos[i], mPincel);
+            }
+        } else {
+            if (segundos < mPintados) {
+                //ha empezado otro minuto, o la hora ha ido hacia atras
+                bitmap.eraseColor(0);
+                mPintados = 0;
+            }
+            while (mPintados < segundos) {
+                anadir(mPintados);
+                mPintados++;
+            }
+            canvas.drawBitmap(bitmap, 0f, 0f, null);
+        }
+        //el trozo del segundo en curso, solo en los modos fluidos
+        float parcial = finSec - segundos * GRADOS_SEGUNDO;
+        if (parcial > 0f && segundos < SEGUNDOS) {
+            canvas.drawArc(mOval, -90f + segundos * GRADOS_SEGUNDO, Math.min(parcial, mBarrido),
+                    false, mPincel);
+        }
+    }
+
+    //pinta el segmento y borra el brillo que ha dejado dentro de el y del anterior
+    private void anadir(int segundo) {
+        mCanvas.drawPath(mSegmentos[segundo], mPincel);
+        mCanvas.drawPath(mSegmentos[segundo], mPincelBorrar);
+        if (segundo > 0) {
+            mCanvas.drawPath(mSegmentos[segundo - 1], mPincelBorrar);
+        }
+    }
+
+    /**
+     * devolvemos el bitmap a la cache cuando ya no se usa
+     */
+    void liberar() {
+        mCache.soltar(mEntrada);
+        mEntrada = null;
+        mCanvas = null;
+    }
+}
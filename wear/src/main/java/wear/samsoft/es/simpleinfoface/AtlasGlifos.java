@@ -0,0 +1,192 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * Atlas con todos los textos que puede pintar la caratula ya rasterizados con su pincel
+ * (incluido el brillo del BlurMaskFilter): los porcentajes de bateria de "0%" a "100%", los
+ * dias de la semana, los dias del mes, los meses y el anio actual. Se construye una vez por
+ * pantalla y en cada frame los textos se pintan copiando un trozo del bitmap.
+ *
+ * Cada entrada guarda el rectangulo que ocupa en el bitmap, su ancho de avance y donde cae la
+ * linea base, para poder colocarla igual que lo haria drawText. El bitmap es una entrada de la
+ * CacheBitmaps, si la suelta hay que volver a construirlo.
+ *
+ * Se construye en el hilo de preparacion. Cada PaqueteRecursos es de un anio, asi que al
+ * reconstruirlo porque la cache lo ha soltado las entradas quedan donde estaban y el hilo
+ * principal puede seguir pintando mientras tanto.
+ */
+class AtlasGlifos {
+
+    //indices de cada grupo de entradas
+    static final int PORCENTAJES = 0;//101 entradas, de "0%" a "100%"
+    static final int DIAS_SEMANA = PORCENTAJES + 101;//7 entradas, de domingo a sabado
+    static final int DIAS_MES = DIAS_SEMANA + 7;//31 entradas, del 1 al 31
+    static final int MESES = DIAS_MES + 31;//12 entradas, de enero a diciembre
+    static final int ANIO = MESES + 12;//el anio actual
+    private static final int ENTRADAS = ANIO + 1;
+
+    //ancho maximo del bitmap, las entradas se colocan por filas
+    private static final int ANCHO_ATLAS = 512;
+
+    //margen alrededor de cada entrada para que quepa el brillo
+    private static final int MARGEN = 4;
+
+    private final CacheBitmaps mCache;
+    private volatile CacheBitmaps.Entrada mEntrada;
+
+    //por cada entrada su rectangulo en el atlas, su ancho de avance y la distancia desde la
+    //parte de arriba del rectangulo hasta la linea base
+    private final Rect[] mOrigen = new Rect[ENTRADAS];
+    private final float[] mAvance = new float[ENTRADAS];
+    private final int[] mLineaBase = new int[ENTRADAS];
+
+    //rectangulo destino reutilizable
+    private final Rect mDestino = new Rect();
+
+    //anio que tiene rasterizado la entrada ANIO
+    private int mAnio = -1;
+
+    AtlasGlifos(CacheBitmaps cache) {
+        mCache = cache;
+        for (int i = 0; i < ENTRADAS; i++) {
+            mOrigen[i] = new Rect();
+        }
+    }
+
+    /**
+     * @return true si el atlas no esta construido o tiene otro anio, el atlas lo comparten
+     * los motores y puede que otro ya lo haya construido
+     */
+    boolean necesitaConstruir(int anio) {
+        return !CacheBitmaps.vigente(mEntrada) || mAnio != anio;
+    }
+
+    /**
+     * rasteriza todas las entradas, se llama cuando cambian los tamanios de texto o el anio
+     * @param pincelBat pincel del porcentaje de bateria
+     * @param pincelBlanco pincel de la parte blanca de la fecha (dia de la semana y del mes)
+     * @param pincelCyan pincel de la parte cyan de la fecha (mes y anio)
+     * @param anio el anio actual
+     */
+    void construir(Paint pincelBat, Paint pincelBlanco, Paint pincelCyan, int anio) {
+        String[] textos = new String[ENTRADAS];
+        Paint[] pinceles = new Paint[ENTRADAS];
+        for (int i = 0; i <= 100; i++) {
+            textos[PORCENTAJES + i] = i + "%";
+            pinceles[PORCENTAJES + i] = pincelBat;
+        }
+        //los nombres los sacamos del Calendar igual que la fecha
+        Calendar calendar = Calendar.getInstance();
+        for (int i = 0; i < 7; i++) {
+            calendar.set(Calendar.DAY_OF_WEEK, Calendar.SUNDAY + i);
+            textos[DIAS_SEMANA + i] = calendar.getDisplayName(
+                    Calendar.DAY_OF_WEEK, Calendar.SHORT, Locale.ENGLISH);
+            pinceles[DIAS_SEMANA + i] = pincelBlanco;
+        }
+        for (int i = 0; i < 31; i++) {
+            textos[DIAS_MES + i] = String.valueOf(i + 1);
+            pinceles[DIAS_MES + i] = pincelBlanco;
+        }
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        for (int i = 0; i < 12; i++) {
+            calendar.set(Calendar.MONTH, Calendar.JANUARY + i);
+            textos[MESES + i] = calendar.getDisplayName(
+                    Calendar.MONTH, Calendar.SHORT, Locale.ENGLISH);
+            pinceles[MESES + i] = pincelCyan;
+        }
+        textos[ANIO] = String.valueOf(anio);
+        pinceles[ANIO] = pincelCyan;
+
+        //colocamos las entradas por filas para saber el alto del bitmap
+        int x = 0;
+        int y = 0;
+        int altoFila = 0;
+        for (int i = 0; i < ENTRADAS; i++) {
+            Paint pincel = pinceles[i];
+            mAvance[i] = pincel.measureText(textos[i]);
+            int w = (int) Math.ceil(mAvance[i]) + MARGEN * 2;
+            int h = (int) Math.ceil(pincel.descent() - pincel.ascent()) + MARGEN * 2;
+            if (x + w > ANCHO_ATLAS) {
+                x = 0;
+                y += altoFila;
+                altoFila = 0;
+            }
+            mOrigen[i].set(x, y, x + w, y + h);
+            mLineaBase[i] = MARGEN + (int) Math.ceil(-pincel.ascent());
+            x += w;
+            altoFila = Math.max(altoFila, h);
+        }
+        int alto = y + altoFila;
+
+        CacheBitmaps.Entrada entrada = mCache.asegurar(mEntrada, ANCHO_ATLAS, alto,
+                CacheBitmaps.USO_INTERACTIVO);
+        Bitmap bitmap = mCache.usar(entrada);
+        if (entrada == mEntrada) {
+            bitmap.eraseColor(0);
+        }
+        Canvas canvas = new Canvas(bitmap);
+        for (int i = 0; i < ENTRADAS; i++) {
+            Rect r = mOrigen[i];
+            canvas.drawText(textos[i], r.left + MARGEN, r.top + mLineaBase[i], pinceles[i]);
+        }
+        mAnio = anio;
+        //la entrada se cambia la ultima, con el bitmap ya pintado
+        mEntrada = entrada;
+    }
+
+    /**
+     * @return lo que avanza la entrada, igual que measureText de su texto
+     */
+    float avance(int entrada) {
+        return mAvance[entrada];
+    }
+
+    /**
+     * pinta una entrada como lo haria drawText
+     * @param x posicion del principio del texto
+     * @param yBase posicion de la linea base
+     */
+    void dibujar(Canvas canvas, int entrada, float x, float yBase) {
+        Rect origen = mOrigen[entrada];
+        //redondeamos al pixel para que la copia sea exacta y no se emborrone el texto
+        int izquierda = Math.round(x) - MARGEN;
+        int arriba = Math.round(yBase) - mLineaBase[entrada];
+        mDestino.set(izquierda, arriba,
+                izquierda + origen.width(), arriba + origen.height());
+        Bitmap bitmap = mCache.usar(mEntrada);
+        if (bitmap != null) {
+            canvas.drawBitmap(bitmap, origen, mDestino, null);
+        }
+    }
+
+    /**
+     * devolvemos el bitmap a la cache cuando ya no lo usa ningun motor
+     */
+    void liberar() {
+        mCache.soltar(mEntrada);
+        mEntrada = null;
+        mAnio = -1;
+    }
+}
@@ -0,0 +1,353 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+/**
+ * Cache en memoria de todos los bitmaps que pintamos fuera de pantalla (capa estatica,
+ * sprites de las manecillas y atlas de textos) con un limite de bytes para todo el proceso.
+ *
+ * Cada bitmap es una Entrada que guarda quien lo pinta. Las entradas estan en una lista por
+ * orden de creacion y cada una apunta el ultimo frame en el que se pinto, cuando no cabe uno
+ * nuevo se sueltan las que hace mas frames que no se pintan. El propietario de una entrada
+ * soltada lo ve al ir a pintarla (usar devuelve null) y la vuelve a pintar, o a leer de la
+ * CachePixeles.
+ *
+ * Los bitmaps que sueltan sus propietarios se guardan para reutilizarlos en la siguiente
+ * entrada del mismo tamanio en vez de crear otro, como haria inBitmap. Reutilizar uno es
+ * borrarlo, asi que solo se guardan los que se sueltan en el liberar de los RecursosFrame, que
+ * se hace despues del relevo cuando el hilo principal ya no los pinta. Los que se cambian en
+ * asegurar o se desalojan pueden seguir en pantalla y se dejan al GC. Con el onTrimMemory se
+ * sueltan primero los guardados para reutilizar, luego en ambiente lo que solo sirve en
+ * interactivo y despues lo que menos se ha usado hasta bajar de lo que pide el nivel. El
+ * TRIM_MEMORY_UI_HIDDEN no es falta de memoria, la caratula sigue en pantalla, y con el solo
+ * se sueltan los guardados.
+ *
+ * La usan el hilo principal, que pinta, y el hilo de preparacion, que crea los bitmaps, asi
+ * que todo va sincronizado menos usar, que se llama para cada bitmap de cada frame: lee el
+ * bitmap volatile de la entrada sin tomar el monitor y apunta el frame solo la primera vez
+ * que la pinta en ese frame. Los aciertos y fallos se cuentan donde el hilo de preparacion
+ * busca o vuelve a pintar una entrada (asegurar y acierto), no al pintar. Los bitmaps
+ * soltados no se reciclan: desde Android 3.0 los pixeles estan en el heap y los libera el GC
+ * cuando nadie los usa, y asi un bitmap que suelta el hilo de preparacion nunca se recicla
+ * mientras el principal lo esta pintando.
+ */
+class CacheBitmaps {
+
+    //para que modo sirve cada entrada
+    static final int USO_INTERACTIVO = 1;
+    static final int USO_AMBIENTE = 2;
+
+    private static final int BYTES_PIXEL = 4;
+
+    /**
+     * un bitmap de la cache, lo guarda su propietario para pintarlo
+     */
+    static final class Entrada {
+        private volatile Bitmap mBitmap;
+        private final int mUso;
+        private final int mBytes;
+        //el ultimo frame en el que se pinto o se preparo
+        private volatile long mFrame;
+        //lista por orden de creacion, de la mas antigua a la mas nueva
+        private Entrada mAnterior;
+        private Entrada mSiguiente;
+
+        private Entrada(Bitmap bitmap, int uso) {
+            mBitmap = bitmap;
+            mUso = uso;
+            mBytes = bitmap.getWidth() * bitmap.getHeight() * BYTES_PIXEL;
+        }
+    }
+
+    private final long mPresupuesto;
+    //extremos de la lista por orden de creacion
+    private Entrada mMasAntigua;
+    private Entrada mMasNueva;
+    //frames pintados, solo lo cambia el hilo principal
+    private volatile long mFrame;
+    //bytes de las entradas y de los bitmaps guardados para reutilizar
+    private long mBytesEntradas;
+    private long mBytesReutilizables;
+    private final ArrayList<Bitmap> mReutilizables = new ArrayList<Bitmap>();
+
+    private boolean mAmbiente;
+
+    //contadores para el dumpsys
+    private int mAciertos;
+    private int mFallos;
+    private int mDesalojos;
+    private int mReutilizados;
+
+    /**
+     * @param presupuesto bytes que pueden ocupar entre todos los bitmaps
+     */
+    CacheBitmaps(long presupuesto) {
+        mPresupuesto = presupuesto;
+    }
+
+    /**
+     * el modo en el que esta la caratula, en ambiente lo interactivo es lo primero que se
+     * suelta si falta memoria
+     */
+    synchronized void setAmbiente(boolean ambiente) {
+        mAmbiente = ambiente;
+    }
+
+    /**
+     * el hilo principal empieza a pintar un frame, las entradas que use a partir de ahora
+     * seran las mas recientes
+     */
+    void nuevoFrame() {
+        //un solo hilo escribe, no hace falta que el incremento sea atomico
+        mFrame = mFrame + 1;
+    }
+
+    /**
+     * nos da una entrada con un bitmap del tamanio pedido para pintar en el, la actual si
+     * sigue en la cache y tiene ese tamanio. Si no es la actual el bitmap viene transparente
+     * @param actual la entrada que tenia el propietario, puede ser null
+     * @param uso USO_INTERACTIVO o USO_AMBIENTE
+     */
+    synchronized Entrada asegurar(Entrada actual, int width, int height, int uso) {
+        if (vigente(actual) && actual.mUso == uso
+                && actual.mBitmap.getWidth() == width && actual.mBitmap.getHeight() == height) {
+            mAciertos++;
+            actual.mFrame = mFrame;
+            return actual;
+        }
+        //la entrada anterior puede ser de unos recursos ya publicados que el hilo principal
+        //sigue pintando, su bitmap no se reutiliza
+        if (vigente(actual)) {
+            quitar(actual);
+        }
+        mFallos++;
+
+        long bytes = (long) width * height * BYTES_PIXEL;
+        Bitmap bitmap = tomarReutilizable(width, height);
+        if (bitmap == null) {
+            //hacemos sitio, primero con los guardados y luego con lo menos usado
+            vaciarReutilizables();
+            while (mMasAntigua != null && mBytesEntradas + bytes > mPresupuesto) {
+                desalojar(menosReciente());
+            }
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        Entrada entrada = new Entrada(bitmap, uso);
+        entrada.mFrame = mFrame;
+        mBytesEntradas += entrada.mBytes;
+        enlazar(entrada);
+        return entrada;
+    }
+
+    /**
+     * @return true si la entrada sigue teniendo su bitmap
+     */
+    static boolean vigente(Entrada entrada) {
+        return entrada != null && entrada.mBitmap != null;
+    }
+
+    /**
+     * el hilo de preparacion ha encontrado ya pintada una entrada que no pasa por asegurar
+     * (el atlas o un sprite compartido) y la va a usar tal cual
+     */
+    synchronized void acierto() {
+        mAciertos++;
+    }
+
+    /**
+     * toma el bitmap de la entrada para pintarlo y, si es la primera vez en este frame, apunta
+     * el frame. No toma el monitor, se llama desde el onDraw para cada bitmap
+     * @return el bitmap o null si la cache lo ha soltado y hay que volver a pintarlo
+     */
+    Bitmap usar(Entrada entrada) {
+        if (entrada == null) {
+            return null;
+        }
+        //leemos el bitmap una sola vez, lo puede soltar el otro hilo mientras tanto
+        Bitmap bitmap = entrada.mBitmap;
+        long frame = mFrame;
+        if (bitmap != null && entrada.mFrame != frame) {
+            entrada.mFrame = frame;
+        }
+        return bitmap;
+    }
+
+    /**
+     * el propietario ya no necesita la entrada, su bitmap se guarda para reutilizarlo si cabe.
+     * Solo se puede llamar cuando nadie va a volver a pintar el bitmap: desde el liberar que
+     * hace el hilo de preparacion despues del relevo, o con una entrada que aun no se ha
+     * publicado
+     * @param entrada puede ser null o estar ya soltada
+     */
+    synchronized void soltar(Entrada entrada) {
+        if (!vigente(entrada)) {
+            return;
+        }
+        Bitmap bitmap = entrada.mBitmap;
+        quitar(entrada);
+        if (mBytesEntradas + mBytesReutilizables + entrada.mBytes <= mPresupuesto) {
+            mReutilizables.add(bitmap);
+            mBytesReutilizables += entrada.mBytes;
+        }
+    }
+
+    /**
+     * libera memoria segun el nivel del onTrimMemory
+     */
+    synchronized void recortar(int nivel) {
+        //lo guardado para reutilizar es lo primero que sobra
+        vaciarReutilizables();
+        if (nivel >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                && nivel < ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            //no se ve ninguna ventana de la app pero la caratula sigue pintando, no hay falta
+            //de memoria y no soltamos nada que este en uso
+            return;
+        }
+        //en ambiente lo interactivo no se va a pintar hasta que volvamos
+        if (mAmbiente) {
+            Entrada entrada = mMasAntigua;
+            while (entrada != null) {
+                Entrada siguiente = entrada.mSiguiente;
+                if ((entrada.mUso & USO_AMBIENTE) == 0) {
+                    desalojar(entrada);
+                }
+                entrada = siguiente;
+            }
+        }
+        //y bajamos de lo que pide el nivel quitando lo menos usado
+        long objetivo = objetivo(nivel);
+        while (mMasAntigua != null && mBytesEntradas > objetivo) {
+            desalojar(menosReciente());
+        }
+    }
+
+    /**
+     * bytes que pueden quedar en la cache para cada nivel del onTrimMemory
+     */
+    private long objetivo(int nivel) {
+        if (nivel >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
+            //el proceso es el siguiente que se mata, no merece la pena guardar nada
+            return 0;
+        } else if (nivel >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            return mPresupuesto / 4;
+        } else if (nivel >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            return mPresupuesto / 2;
+        } else if (nivel >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            //estamos en pantalla, nos quedamos con lo minimo para no repintar todo
+            return mPresupuesto / 4;
+        } else if (nivel >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return mPresupuesto / 2;
+        }
+        //TRIM_MEMORY_RUNNING_MODERATE
+        return mPresupuesto * 3 / 4;
+    }
+
+    private Bitmap tomarReutilizable(int width, int height) {
+        for (int i = mReutilizables.size() - 1; i >= 0; i--) {
+            Bitmap bitmap = mReutilizables.get(i);
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                mReutilizables.remove(i);
+                mBytesReutilizables -= (long) width * height * BYTES_PIXEL;
+                bitmap.eraseColor(0);
+                mReutilizados++;
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    private void vaciarReutilizables() {
+        mReutilizables.clear();
+        mBytesReutilizables = 0;
+    }
+
+    private void desalojar(Entrada entrada) {
+        quitar(entrada);
+        mDesalojos++;
+    }
+
+    //saca la entrada de la lista y la deja sin bitmap
+    private void quitar(Entrada entrada) {
+        desenlazar(entrada);
+        mBytesEntradas -= entrada.mBytes;
+        entrada.mBitmap = null;
+    }
+
+    //la entrada que hace mas frames que no se pinta, con empate la mas antigua
+    private Entrada menosReciente() {
+        Entrada menos = mMasAntigua;
+        for (Entrada entrada = mMasAntigua; entrada != null; entrada = entrada.mSiguiente) {
+            if (entrada.mFrame < menos.mFrame) {
+                menos = entrada;
+            }
+        }
+        return menos;
+    }
+
+    //la pone al final de la lista
+    private void enlazar(Entrada entrada) {
+        entrada.mAnterior = mMasNueva;
+        entrada.mSiguiente = null;
+        if (mMasNueva != null) {
+            mMasNueva.mSiguiente = entrada;
+        } else {
+            mMasAntigua = entrada;
+        }
+        mMasNueva = entrada;
+    }
+
+    private void desenlazar(Entrada entrada) {
+        if (entrada.mAnterior != null) {
+            entrada.mAnterior.mSiguiente = entrada.mSiguiente;
+        } else {
+            mMasAntigua = entrada.mSiguiente;
+        }
+        if (entrada.mSiguiente != null) {
+            entrada.mSiguiente.mAnterior = entrada.mAnterior;
+        } else {
+            mMasNueva = entrada.mAnterior;
+        }
+        entrada.mAnterior = null;
+        entrada.mSiguiente = null;
+    }
+
+    /**
+     * escribe los contadores en la salida del dump
+     */
+    synchronized void volcar(String prefijo, PrintWriter out) {
+        out.print(prefijo);
+        out.println("bitmaps bytes=" + mBytesEntradas + "/" + mPresupuesto
+                + " reutilizables=" + mBytesReutilizables
+                + " aciertos=" + mAciertos + " fallos=" + mFallos
+                + " desalojos=" + mDesalojos + " reutilizados=" + mReutilizados);
+    }
+
+    /**
+     * pone a cero los contadores
+     */
+    synchronized void reiniciar() {
+        mAciertos = 0;
+        mFallos = 0;
+        mDesalojos = 0;
+        mReutilizados = 0;
+    }
+}
@@ -0,0 +1,156 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface;
+
+import android.graphics.Bitmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Cache en disco de bitmaps ya pintados (la capa estatica y los sprites de las manecillas)
+ * guardados como pixeles en crudo. Despues de que el sistema mate el proceso el primer frame
+ * los lee mapeando el fichero con FileChannel.map y copiandolos directamente al Bitmap, sin
+ * volver a pintar ningun desenfoque.
+ *
+ * Cada fichero lleva una cabecera con el tamanio, el modo y la huella del contenido, si
+ * alguno no coincide con lo que se pide la cache esta caducada y se vuelve a pintar.
+ */
+class CachePixeles {
+
+    //cabecera: magia, version del formato, ancho, alto, modo y huella
+    private static final int MAGIA = 0x53494650;//"SIFP"
+    private static final int VERSION_FORMATO = 1;
+    private static final int CABECERA = 4 * 5 + 8;
+
+    private static final int BYTES_PIXEL = 4;//ARGB_8888
+
+    private final File mDirectorio;
+
+    //contadores para el dumpsys
+    private int mAciertos;
+    private int mFallos;
+
+    CachePixeles(File directorio) {
+        mDirectorio = directorio;
+    }
+
+    /**
+     * lee un bitmap de la cache
+     * @param nombre nombre del fichero dentro del directorio de la cache
+     * @param modo el modo para el que se pinto, por ejemplo ambiente o interactivo
+     * @param huella huella del contenido que esperamos
+     * @param reutilizar bitmap mutable del mismo tamanio, de la CacheBitmaps para que cuente
+     * en su limite de memoria. Aqui nunca se crea otro
+     * @return el bitmap con los pixeles o null si no esta, esta caducado o no hay donde leerlo
+     */
+    Bitmap cargar(String nombre, int width, int height, int modo, long huella,
+                  Bitmap reutilizar) {
+        if (reutilizar == null || reutilizar.getWidth() != width
+                || reutilizar.getHeight() != height || !reutilizar.isMutable()) {
+            //un bitmap nuevo quedaria fuera de la CacheBitmaps, mejor que se pinte
+            mFallos++;
+            return null;
+        }
+        File fichero = new File(mDirectorio, nombre);
+        long bytes = (long) width * height * BYTES_PIXEL;
+        if (fichero.length() != CABECERA + bytes) {
+            mFallos++;
+            return null;
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(fichero, "r");
+            MappedByteBuffer mapa = raf.getChannel()
+                    .map(FileChannel.MapMode.READ_ONLY, 0, CABECERA + bytes);
+            if (mapa.getInt() != MAGIA
+                    || mapa.getInt() != VERSION_FORMATO
+                    || mapa.getInt() != width
+                    || mapa.getInt() != height
+                    || mapa.getInt() != modo
+                    || mapa.getLong() != huella) {
+                mFallos++;
+                return null;
+            }
+            //los pixeles van justo despues de la cabecera, que es donde esta el mapa
+            reutilizar.copyPixelsFromBuffer(mapa);
+            mAciertos++;
+            return reutilizar;
+        } catch (IOException e) {
+            mFallos++;
+            return null;
+        } finally {
+            cerrar(raf);
+        }
+    }
+
+    /**
+     * guarda los pixeles de un bitmap, si falla no pasa nada, se pintara la proxima vez
+     */
+    void guardar(String nombre, Bitmap bitmap, int modo, long huella) {
+        if (!mDirectorio.isDirectory() && !mDirectorio.mkdirs()) {
+            return;
+        }
+        File fichero = new File(mDirectorio, nombre);
+        File temporal = new File(mDirectorio, nombre + ".tmp");
+        long bytes = (long) bitmap.getWidth() * bitmap.getHeight() * BYTES_PIXEL;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(temporal, "rw");
+            raf.setLength(CABECERA + bytes);
+            MappedByteBuffer mapa = raf.getChannel()
+                    .map(FileChannel.MapMode.READ_WRITE, 0, CABECERA + bytes);
+            mapa.putInt(MAGIA);
+            mapa.putInt(VERSION_FORMATO);
+            mapa.putInt(bitmap.getWidth());
+            mapa.putInt(bitmap.getHeight());
+            mapa.putInt(modo);
+            mapa.putLong(huella);
+            bitmap.copyPixelsToBuffer(mapa);
+            mapa.force();
+            raf.close();
+            raf = null;
+            if (!temporal.renameTo(fichero)) {
+                temporal.delete();
+            }
+        } catch (IOException e) {
+            temporal.delete();
+        } finally {
+            cerrar(raf);
+        }
+    }
+
+    int getAciertos() {
+        return mAciertos;
+    }
+
+    int getFallos() {
+        return mFallos;
+    }
+
+    private static void cerrar(RandomAccessFile raf) {
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                //no hay nada que hacer
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+/**
+ * Capa estatica de la caratula, aqui se pinta una unica vez todo lo que no cambia entre
+ * frames (fondo, marcadores de las horas, marco de la bateria y casillero de la fecha) en un
+ * bitmap fuera de pantalla, de forma que en el onDraw solo tenemos que volcarlo.
+ *
+ * La capa se tiene que reconstruir cuando cambia el tamanio de la superficie, cuando pasamos
+ * entre modo ambiente e interactivo y cuando cambia el dia. Antes de pintarla se intenta leer
+ * de la CachePixeles, que la guarda entre ejecuciones del proceso.
+ *
+ * El bitmap es una entrada de la CacheBitmaps, si la suelta por falta de memoria la capa deja
+ * de ser valida y se vuelve a pintar. Cada RecursosFrame tiene la suya y se pinta en el hilo de
+ * preparacion antes de publicarlo, despues el hilo principal solo la vuelca.
+ */
+class CapaEstatica {
+
+    private final CacheBitmaps mCache;
+    //la entrada donde tenemos pintada la capa y un canvas para pintar en su bitmap
+    private CacheBitmaps.Entrada mEntrada;
+    private Bitmap mBitmapCanvas;
+    private Canvas mCanvas;
+
+    //estado con el que se pinto la capa por ultima vez
+    private boolean mAmbiente;
+    private int mDia = -1;
+    private int mAncho;
+    private int mAlto;
+    private boolean mValida = false;
+
+    CapaEstatica(CacheBitmaps cache) {
+        mCache = cache;
+    }
+
+    /**
+     * nos dice si la capa ya no sirve para el estado actual y hay que volver a pintarla
+     * @param width ancho de la superficie
+     * @param height alto de la superficie
+     * @param ambiente si estamos en modo ambiente
+     * @param dia el dia del anio actual
+     * @return true si hay que reconstruir la capa
+     */
+    boolean necesitaReconstruir(int width, int height, boolean ambiente, int dia) {
+        return !mValida
+                || !CacheBitmaps.vigente(mEntrada)
+                || mAncho != width
+                || mAlto != height
+                || mAmbiente != ambiente
+                || mDia != dia;
+    }
+
+    /**
+     * prepara el bitmap para volver a pintar la capa, solo se pide uno nuevo a la cache si
+     * ha cambiado el tamanio o lo ha soltado
+     * @return el canvas sobre el que pintar los elementos estaticos
+     */
+    Canvas empezar(int width, int height, boolean ambiente, int dia) {
+        Bitmap bitmap = tomarBitmap(width, height, ambiente);
+        if (bitmap != mBitmapCanvas) {
+            mBitmapCanvas = bitmap;
+            mCanvas = new Canvas(bitmap);
+        }
+        marcar(width, height, ambiente, dia);
+        return mCanvas;
+    }
+
+    /**
+     * intenta tomar la capa ya pintada de la cache de disco
+     * @param huella huella de todo lo que se pinta en la capa
+     * @return true si estaba en la cache y ya se puede volcar
+     */
+    boolean cargar(CachePixeles cache, String nombre, long huella,
+                   int width, int height, boolean ambiente, int dia) {
+        //el bitmap de la entrada es mutable y del mismo tamanio, la cache de disco lo rellena
+        if (cache.cargar(nombre, width, height, ambiente ? 1 : 0, huella,
+                tomarBitmap(width, height, ambiente)) == null) {
+            return false;
+        }
+        marcar(width, height, ambiente, dia);
+        return true;
+    }
+
+    private Bitmap tomarBitmap(int width, int height, boolean ambiente) {
+        mEntrada = mCache.asegurar(mEntrada, width, height,
+                ambiente ? CacheBitmaps.USO_AMBIENTE : CacheBitmaps.USO_INTERACTIVO);
+        return mCache.usar(mEntrada);
+    }
+
+    private void marcar(int width, int height, boolean ambiente, int dia) {
+        mAncho = width;
+        mAlto = height;
+        mAmbiente = ambiente;
+        mDia = dia;
+        mValida = true;
+    }
+
+    /**
+     * guarda la capa recien pintada en la cache de disco
+     */
+    void guardar(CachePixeles cache, String nombre, long huella) {
+        Bitmap bitmap = mCache.usar(mEntrada);
+        if (bitmap != null) {
+            cache.guardar(nombre, bitmap, mAmbiente ? 1 : 0, huella);
+        }
+    }
+
+    /**
+     * marca la capa como no valida para que se pinte de nuevo en el siguiente frame
+     */
+    void invalidar() {
+        mValida = false;
+    }
+
+    /**
+     * volcamos la capa en el canvas del frame
+     */
+    void dibujar(Canvas canvas) {
+        Bitmap bitmap = mCache.usar(mEntrada);
+        if (bitmap != null) {
+            canvas.drawBitmap(bitmap, 0f, 0f, null);
+        }
+    }
+
+    /**
+     * devolvemos el bitmap a la cache cuando el motor se destruye
+     */
+    void liberar() {
+        mCache.soltar(mEntrada);
+        mEntrada = null;
+        mBitmapCanvas = null;
+        mCanvas = null;
+        mValida = false;
+    }
+}
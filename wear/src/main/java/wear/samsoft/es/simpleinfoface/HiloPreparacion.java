@@ -0,0 +1,94 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Hilo de preparacion del servicio, comun a todos los motores. Aqui se hace todo lo caro que
+ * no es pintar un frame: la disposicion, los pinceles y el pintado de la capa estatica, las
+ * manecillas y el atlas, o su lectura de la cache de disco. Asi el hilo principal, que es el
+ * que pinta, nunca se queda parado en un cambio de superficie o de modo.
+ *
+ * Al ser un unico hilo las tareas de los distintos motores nunca se pisan entre ellas.
+ */
+class HiloPreparacion {
+
+    private final HandlerThread mHilo;
+    private final Handler mHandler;
+
+    //contadores para el dumpsys, los escribe el hilo de preparacion
+    private volatile int mTareas;
+    private volatile long mTotalNanos;
+    private volatile long mMaxNanos;
+
+    HiloPreparacion() {
+        //por debajo del hilo principal para no quitarle CPU cuando tiene que pintar
+        mHilo = new HandlerThread("preparacion",
+                Process.THREAD_PRIORITY_DEFAULT + Process.THREAD_PRIORITY_LESS_FAVORABLE);
+        mHilo.start();
+        mHandler = new Handler(mHilo.getLooper());
+    }
+
+    /**
+     * encarga una tarea, si ya estaba encargada y no ha empezado solo se hace una vez
+     */
+    void encargar(Runnable tarea) {
+        mHandler.removeCallbacks(tarea);
+        mHandler.post(tarea);
+    }
+
+    /**
+     * quita una tarea encargada que todavia no ha empezado
+     */
+    void cancelar(Runnable tarea) {
+        mHandler.removeCallbacks(tarea);
+    }
+
+    /**
+     * apunta lo que ha tardado una tarea
+     */
+    void medir(long nanos) {
+        mTareas++;
+        mTotalNanos += nanos;
+        if (nanos > mMaxNanos) {
+            mMaxNanos = nanos;
+        }
+    }
+
+    /**
+     * para el hilo cuando se destruye el servicio, antes termina lo que ya estaba encargado
+     * (lo que sueltan los motores y la ultima escritura del historial)
+     */
+    void parar() {
+        mHilo.quitSafely();
+    }
+
+    /**
+     * escribe los contadores en la salida del dump
+     */
+    void volcar(String prefijo, PrintWriter out) {
+        int tareas = mTareas;
+        out.print(prefijo);
+        out.println(String.format(Locale.US, "preparacion tareas=%d media=%.2fms max=%.2fms",
+                tareas, tareas == 0 ? 0 : mTotalNanos / 1e6 / tareas, mMaxNanos / 1e6));
+    }
+}
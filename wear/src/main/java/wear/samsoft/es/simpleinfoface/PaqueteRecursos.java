@@ -0,0 +1,201 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface;
+
+import android.graphics.BlurMaskFilter;
+import android.graphics.Color;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Shader;
+
+import wear.samsoft.es.simpleinfoface.core.Disposicion;
+import wear.samsoft.es.simpleinfoface.core.Tema;
+
+/**
+ * Pinceles, shaders y bitmaps de la caratula para un tamanio de pantalla, un anio (el del
+ * atlas de textos) y un Tema, que es su version compilada. Se crean ya configurados y despues
+ * nadie los cambia, asi los pueden usar a la vez todos los motores con la misma pantalla (la
+ * caratula activa y las vistas previas del selector). Los reparte el PoolRecursos contando
+ * cuantos motores los usan, los bitmaps los guarda la CacheBitmaps del servicio.
+ *
+ * El pincel del casillero de la fecha no esta aqui porque su degradado cambia con el dia, cada
+ * RecursosFrame tiene el suyo.
+ */
+class PaqueteRecursos {
+
+    //el tamanio de pantalla para el que estan configurados
+    final int width;
+    final int height;
+    //el anio que lleva el atlas
+    final int anio;
+    //los colores y el brillo con los que estan configurados
+    final Tema tema;
+
+    //pinceles para dar formato a lo que pintaremos, fondos lineas, letras, etc
+    final Paint pincelFondo = new Paint();
+    final Paint pincelAzulBlur = new Paint();
+    final Paint pincelMinutos = new Paint();
+    final Paint pincelCyanSolido = new Paint();
+    final Paint pincelHoras = new Paint();
+    final Paint pincelBlancoSolido = new Paint();
+    final Paint pincelCasilleroBateria = new Paint();
+    final Paint pincelCasilleroBateriaSinBrillo;
+    final Paint pincelMarcadoresHoras = new Paint();
+    final Paint pincelMarcoBat = new Paint();
+    final Paint pincelInfoBat = new Paint();
+    final Paint pincelSprites = new Paint();
+    final Paint pincelHistorial = new Paint();
+
+    //degradado del arco de la bateria
+    final Shader shaderBat;
+
+    //alto del texto de la bateria
+    final float altoTextoBat;
+
+    //las manecillas ya pintadas con su brillo y todos los textos ya rasterizados
+    final SpriteManecilla spriteMinutos;
+    final SpriteManecilla spriteHoras;
+    final AtlasGlifos atlas;
+
+    //motores que lo estan usando, lo lleva el PoolRecursos
+    int referencias;
+
+    /**
+     * @param cache de donde salen los bitmaps de las manecillas y los textos
+     */
+    PaqueteRecursos(Disposicion disposicion, int anio, Tema tema, CacheBitmaps cache) {
+        width = disposicion.width;
+        height = disposicion.height;
+        this.anio = anio;
+        this.tema = tema;
+        spriteMinutos = new SpriteManecilla(cache);
+        spriteHoras = new SpriteManecilla(cache);
+        atlas = new AtlasGlifos(cache);
+
+        //preparamos el fondo, en este caso no tiene imagen y el fondo es de color negro
+        pincelFondo.setColor(Color.BLACK);
+
+        //se utilizara para pintar los segmentos del arco de los segundos
+        pincelAzulBlur.setStyle(Paint.Style.STROKE);
+        pincelAzulBlur.setColor(tema.colorSegundos);
+        pincelAzulBlur.setAntiAlias(true);
+        pincelAzulBlur.setMaskFilter(
+                new BlurMaskFilter(tema.brilloSegundos, BlurMaskFilter.Blur.OUTER));
+        pincelAzulBlur.setStrokeJoin(Paint.Join.ROUND);
+        pincelAzulBlur.setStrokeWidth(15f);
+
+        //se utilizara para pintar los minutos
+        pincelMinutos.setColor(tema.colorMinutos);
+        pincelMinutos.setStrokeWidth(10f);
+        pincelMinutos.setAntiAlias(true);
+        pincelMinutos.setStrokeCap(Paint.Cap.ROUND);
+        pincelMinutos.setMaskFilter(
+                new BlurMaskFilter(tema.brilloManecillas, BlurMaskFilter.Blur.SOLID));
+
+        //se utilizara para pintar las horas
+        pincelHoras.setColor(tema.colorHoras);
+        pincelHoras.setStrokeWidth(10f);
+        pincelHoras.setAntiAlias(true);
+        pincelHoras.setStrokeCap(Paint.Cap.ROUND);
+        pincelHoras.setMaskFilter(
+                new BlurMaskFilter(tema.brilloManecillas, BlurMaskFilter.Blur.SOLID));
+
+        //se utilizara para colocar los sprites de las manecillas, el filtrado suaviza el
+        //bitmap al rotarlo
+        pincelSprites.setFilterBitmap(true);
+        pincelSprites.setAntiAlias(true);
+
+        //se utilizara para pintar la fecha
+        pincelCyanSolido.setColor(tema.colorResalte);
+        pincelCyanSolido.setAntiAlias(true);
+        pincelCyanSolido.setMaskFilter(new BlurMaskFilter(2f, BlurMaskFilter.Blur.SOLID));
+
+        //se utilizara para pintar la fecha
+        pincelBlancoSolido.setColor(tema.colorTexto);
+        pincelBlancoSolido.setAntiAlias(true);
+        pincelBlancoSolido.setMaskFilter(new BlurMaskFilter(2f, BlurMaskFilter.Blur.SOLID));
+
+        //se utilizara para el marco de la bateria
+        pincelCasilleroBateria.setStrokeWidth(6f);
+        pincelCasilleroBateria.setAntiAlias(true);
+        pincelCasilleroBateria.setStyle(Paint.Style.STROKE);
+        pincelCasilleroBateria.setStrokeCap(Paint.Cap.ROUND);
+        pincelCasilleroBateria.setMaskFilter(new BlurMaskFilter(3f, BlurMaskFilter.Blur.SOLID));
+
+        //se utilizara para pintar el marco de la bateria
+        pincelMarcoBat.setStrokeWidth(2f);
+        pincelMarcoBat.setAntiAlias(true);
+        pincelMarcoBat.setColor(tema.colorTexto);
+        pincelMarcoBat.setStyle(Paint.Style.STROKE);
+        pincelMarcoBat.setStrokeCap(Paint.Cap.ROUND);
+        pincelMarcoBat.setMaskFilter(new BlurMaskFilter(3f, BlurMaskFilter.Blur.NORMAL));
+
+        //se utilizara para pintar la fecha
+        pincelInfoBat.setColor(tema.colorTexto);
+        pincelInfoBat.setAntiAlias(true);
+        pincelInfoBat.setMaskFilter(new BlurMaskFilter(2f, BlurMaskFilter.Blur.SOLID));
+        pincelInfoBat.setTextSize(13f);
+
+        //se utilizara para pintar la grafica del historial de la bateria, sin brillo para que
+        //no se emborronen las lineas
+        pincelHistorial.setStrokeWidth(1.5f);
+        pincelHistorial.setAntiAlias(true);
+        pincelHistorial.setColor(tema.colorResalte);
+        pincelHistorial.setStyle(Paint.Style.STROKE);
+        pincelHistorial.setStrokeCap(Paint.Cap.ROUND);
+
+        //se utilizara para pintar los marcadores de las horas
+        pincelMarcadoresHoras.setStrokeWidth(3f);
+        pincelMarcadoresHoras.setAntiAlias(true);
+        pincelMarcadoresHoras.setColor(tema.colorTexto);
+        pincelMarcadoresHoras.setStyle(Paint.Style.STROKE);
+        pincelMarcadoresHoras.setStrokeCap(Paint.Cap.ROUND);
+        pincelMarcadoresHoras.setMaskFilter(new BlurMaskFilter(2f, BlurMaskFilter.Blur.SOLID));
+
+        //a partir de aqui lo que depende del tamanio de la pantalla
+
+        //obtenemos las longitudes del texto de la bateria, antes de cambiar el tamanio del
+        //texto de la fecha
+        altoTextoBat = pincelInfoBat.ascent() + pincelCyanSolido.descent();
+
+        //tamanios de los textos
+        pincelCyanSolido.setTextSize(disposicion.tamanioTextoFecha);
+        pincelBlancoSolido.setTextSize(disposicion.tamanioTextoFecha);
+
+        //creamos el shader que sera un gradiente para el arco de la bateria
+        float[] casillero = disposicion.casilleroBateria;
+        shaderBat = new LinearGradient(
+                casillero[0] - 20,
+                casillero[1],
+                casillero[2] - 5,
+                casillero[1] - 20,
+                tema.colorBateriaLlena, tema.colorBateriaVacia, Shader.TileMode.CLAMP);
+        pincelCasilleroBateria.setShader(shaderBat);
+
+        //el mismo sin el desenfoque, para el ahorro de bateria
+        pincelCasilleroBateriaSinBrillo = new Paint(pincelCasilleroBateria);
+        pincelCasilleroBateriaSinBrillo.setMaskFilter(null);
+    }
+
+    /**
+     * liberamos los bitmaps cuando ya no lo usa ningun motor
+     */
+    void liberar() {
+        spriteMinutos.liberar();
+        spriteHoras.liberar();
+        atlas.liberar();
+    }
+}
@@ -0,0 +1,213 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Planificador unico de los repintados. Todas las fuentes (el tick de los segundos, el
+ * onTimeTick, los cambios de modo, la bateria, la zona horaria...) piden aqui un repintado con
+ * su motivo y el plazo maximo que aceptan, y el planificador los junta en un solo despertar
+ * alineado con el cambio de segundo.
+ *
+ * Asi una lectura de bateria que llega a mitad de segundo se pinta con el tick de ese segundo
+ * en vez de despertar la CPU otra vez. Si no hay tick periodico ni nada pendiente no queda
+ * ningun mensaje programado.
+ */
+class PlanificadorDespertares implements Handler.Callback {
+
+    //motivos de un repintado, se pueden juntar varios en un mismo despertar
+    static final int MOTIVO_SEGUNDOS = 1;
+    static final int MOTIVO_MINUTO = 1 << 1;
+    static final int MOTIVO_MODO = 1 << 2;
+    static final int MOTIVO_BATERIA = 1 << 3;
+    static final int MOTIVO_ZONA = 1 << 4;
+    static final int MOTIVO_PROPIEDADES = 1 << 5;
+    static final int MOTIVO_RECURSOS = 1 << 6;
+
+    //los despertares caen en el cambio de segundo
+    static final long ALINEACION_MS = TimeUnit.SECONDS.toMillis(1);
+
+    private static final int MSG_DESPERTAR = 0;
+
+    /**
+     * quien pinta cuando toca, normalmente el motor del reloj
+     */
+    interface Receptor {
+        /**
+         * @return true si la caratula se ve y tiene sentido repintar
+         */
+        boolean necesitaPantalla();
+
+        /**
+         * toca repintar
+         * @param motivos todos los MOTIVO_* que se han juntado en este despertar
+         */
+        void onDespertar(int motivos);
+    }
+
+    private final Handler mHandler;
+    private final Receptor mReceptor;
+
+    //motivos pendientes y hora (de reloj) a la que esta programado el despertar
+    private int mPendientes;
+    private long mObjetivoMillis;
+    //si hay que repetir el tick de los segundos despues de cada despertar
+    private boolean mPeriodico;
+
+    //contadores para el dumpsys
+    private long mDespertares;
+    private long mSolicitudes;
+    private long mFusionadas;
+    private long mDescartadas;
+    private long mInicioMillis = -1;
+
+    /**
+     * hay que crearlo en el hilo del motor, los despertares llegan a ese hilo
+     */
+    PlanificadorDespertares(Receptor receptor) {
+        mHandler = new Handler(Looper.myLooper(), this);
+        mReceptor = receptor;
+    }
+
+    /**
+     * pide un repintado
+     * @param motivo uno de los MOTIVO_*
+     * @param plazoMillis lo que puede esperar como mucho, con 0 se pinta al momento
+     */
+    void solicitar(int motivo, long plazoMillis) {
+        long ahora = System.currentTimeMillis();
+        if (mInicioMillis < 0) {
+            mInicioMillis = ahora;
+        }
+        if (!mReceptor.necesitaPantalla()) {
+            //nadie va a ver el repintado, no despertamos
+            mDescartadas++;
+            return;
+        }
+        mSolicitudes++;
+        //esperamos al siguiente cambio de segundo si el plazo lo permite
+        long objetivo = Math.min(alinear(ahora), ahora + plazoMillis);
+        if (mPendientes != 0) {
+            //ya hay un despertar programado, el motivo va en el mismo
+            mFusionadas++;
+            mPendientes |= motivo;
+            if (objetivo < mObjetivoMillis) {
+                programar(objetivo, ahora);
+            }
+            return;
+        }
+        mPendientes = motivo;
+        programar(objetivo, ahora);
+    }
+
+    /**
+     * enciende o apaga el tick de los segundos, alineado con el cambio de segundo
+     */
+    void setPeriodico(boolean periodico) {
+        if (periodico == mPeriodico) {
+            return;
+        }
+        mPeriodico = periodico;
+        if (periodico) {
+            solicitar(MOTIVO_SEGUNDOS, 0);
+        } else if (mPendientes == MOTIVO_SEGUNDOS) {
+            //solo estabamos esperando al tick, no hace falta despertar
+            cancelar();
+        } else {
+            mPendientes &= ~MOTIVO_SEGUNDOS;
+        }
+    }
+
+    /**
+     * quita el tick y todo lo pendiente, al dejar de verse la caratula o al destruir el motor
+     */
+    void parar() {
+        mPeriodico = false;
+        cancelar();
+    }
+
+    @Override
+    public boolean handleMessage(Message message) {
+        if (message.what != MSG_DESPERTAR) {
+            return false;
+        }
+        int motivos = mPendientes;
+        mPendientes = 0;
+        mDespertares++;
+        if (mPeriodico) {
+            //el siguiente tick, ya alineado con el siguiente segundo
+            long ahora = System.currentTimeMillis();
+            mPendientes = MOTIVO_SEGUNDOS;
+            programar(alinear(ahora + 1), ahora);
+        }
+        if (motivos != 0) {
+            mReceptor.onDespertar(motivos);
+        }
+        return true;
+    }
+
+    /**
+     * escribe los contadores en la salida del dump
+     */
+    void volcar(String prefijo, PrintWriter out, long ahoraMillis) {
+        long transcurrido = mInicioMillis < 0 ? 0 : ahoraMillis - mInicioMillis;
+        out.print(prefijo);
+        out.print("despertares=" + mDespertares + " solicitudes=" + mSolicitudes
+                + " fusionadas=" + mFusionadas + " descartadas=" + mDescartadas
+                + " periodico=" + mPeriodico);
+        if (transcurrido > 0) {
+            out.print(" despertaresPorHora="
+                    + mDespertares * TimeUnit.HOURS.toMillis(1) / transcurrido);
+        }
+        out.println();
+    }
+
+    /**
+     * borra los contadores
+     */
+    void reiniciar(long ahoraMillis) {
+        mDespertares = 0;
+        mSolicitudes = 0;
+        mFusionadas = 0;
+        mDescartadas = 0;
+        mInicioMillis = ahoraMillis;
+    }
+
+    private void programar(long objetivo, long ahora) {
+        mObjetivoMillis = objetivo;
+        mHandler.removeMessages(MSG_DESPERTAR);
+        mHandler.sendEmptyMessageDelayed(MSG_DESPERTAR, Math.max(0, objetivo - ahora));
+    }
+
+    private void cancelar() {
+        mPendientes = 0;
+        mHandler.removeMessages(MSG_DESPERTAR);
+    }
+
+    /**
+     * el primer cambio de segundo a partir de ahora, incluido
+     */
+    private static long alinear(long ahora) {
+        long resto = ahora % ALINEACION_MS;
+        return resto == 0 ? ahora : ahora + ALINEACION_MS - resto;
+    }
+}
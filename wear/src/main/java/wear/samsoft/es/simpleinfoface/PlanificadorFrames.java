@@ -0,0 +1,151 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface;
+
+import android.view.Choreographer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Planificador de frames para el modo fluido de los segundos. Se engancha al vsync de la
+ * pantalla con el Choreographer y solo pide un frame cuando toca segun los fps elegidos. Despues
+ * de cada frame el callback se pide con retraso hasta el vsync del siguiente, asi a 15 o 30
+ * fps la CPU no se despierta en los vsync intermedios y a 60 fps pintamos en cada vsync.
+ *
+ * En el modo de 1 Hz no hace nada, los segundos los marca el PlanificadorDespertares.
+ */
+class PlanificadorFrames implements Choreographer.FrameCallback {
+
+    //modos disponibles, expresados en frames por segundo
+    static final int MODO_1HZ = 1;
+    static final int MODO_15FPS = 15;
+    static final int MODO_30FPS = 30;
+    static final int MODO_60FPS = 60;
+
+    //margen para aceptar un vsync que llega un poco antes de la hora, medio frame a 60 Hz
+    private static final long TOLERANCIA_NANOS = TimeUnit.MILLISECONDS.toNanos(8);
+
+    /**
+     * quien recibe los frames, normalmente el motor del reloj
+     */
+    interface Receptor {
+        /**
+         * @return true si todavia hay que animar, si no el planificador se para solo
+         */
+        boolean debeAnimar();
+
+        /**
+         * toca pintar un frame nuevo
+         */
+        void onFrame();
+    }
+
+    private final Choreographer mChoreographer;
+    private final Receptor mReceptor;
+
+    //modo actual y el intervalo entre frames que le corresponde
+    private int mModo = MODO_1HZ;
+    private long mIntervaloNanos = TimeUnit.SECONDS.toNanos(1);
+
+    //hora del vsync a partir de la cual toca el siguiente frame
+    private long mSiguienteNanos;
+    private boolean mActivo = false;
+
+    /**
+     * hay que crearlo en el hilo del motor, el Choreographer es del hilo que lo pide
+     */
+    PlanificadorFrames(Receptor receptor) {
+        mChoreographer = Choreographer.getInstance();
+        mReceptor = receptor;
+    }
+
+    /**
+     * cambia los fps, si estamos animando el cambio se aplica en el siguiente vsync
+     * @param modo uno de los MODO_*
+     */
+    void setModo(int modo) {
+        mModo = modo;
+        mIntervaloNanos = TimeUnit.SECONDS.toNanos(1) / modo;
+        mSiguienteNanos = 0;
+    }
+
+    int getModo() {
+        return mModo;
+    }
+
+    /**
+     * @return el tiempo entre frames del modo actual
+     */
+    long getIntervaloNanos() {
+        return mIntervaloNanos;
+    }
+
+    /**
+     * @return true si estamos en un modo fluido sincronizado con el vsync
+     */
+    boolean esFluido() {
+        return mModo > MODO_1HZ;
+    }
+
+    /**
+     * empieza a pedir frames al vsync, si ya estabamos animando no hace nada
+     */
+    void iniciar() {
+        if (mActivo || !esFluido()) {
+            return;
+        }
+        mActivo = true;
+        mSiguienteNanos = 0;
+        mChoreographer.postFrameCallback(this);
+    }
+
+    /**
+     * dejamos de pedir frames, se llama al salir de la pantalla o al pasar a modo ambiente
+     */
+    void parar() {
+        if (!mActivo) {
+            return;
+        }
+        mActivo = false;
+        mChoreographer.removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mActivo) {
+            return;
+        }
+        if (!esFluido() || !mReceptor.debeAnimar()) {
+            //nos han quitado el modo fluido o ya no somos visibles
+            mActivo = false;
+            return;
+        }
+        if (frameTimeNanos + TOLERANCIA_NANOS >= mSiguienteNanos) {
+            //avanzamos la siguiente hora desde la prevista para no acumular deriva, pero si
+            //nos hemos quedado atras la calculamos desde este vsync en vez de encadenar frames
+            mSiguienteNanos += mIntervaloNanos;
+            if (mSiguienteNanos + TOLERANCIA_NANOS <= frameTimeNanos) {
+                mSiguienteNanos = frameTimeNanos + mIntervaloNanos;
+            }
+            mReceptor.onFrame();
+        }
+        //no nos despertamos hasta el vsync del siguiente frame, el retraso lo cuenta el
+        //Choreographer desde ahora y el frameTimeNanos va en la misma base que nanoTime
+        long restante = mSiguienteNanos - TOLERANCIA_NANOS - System.nanoTime();
+        mChoreographer.postFrameCallbackDelayed(this,
+                Math.max(0L, TimeUnit.NANOSECONDS.toMillis(restante)));
+    }
+}
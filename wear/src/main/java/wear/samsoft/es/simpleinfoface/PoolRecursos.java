@@ -0,0 +1,95 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+import wear.samsoft.es.simpleinfoface.core.Disposicion;
+import wear.samsoft.es.simpleinfoface.core.Tema;
+
+/**
+ * Pool de recursos del servicio, comun a todos sus motores. Cada vez que se elige la caratula
+ * o se abre su vista previa el sistema crea un motor nuevo, con el pool los motores con la
+ * misma pantalla comparten un unico PaqueteRecursos en vez de crear cada uno sus pinceles,
+ * shaders y bitmaps.
+ *
+ * Lleva la cuenta de los motores que usan cada paquete y lo libera cuando lo suelta el ultimo.
+ * Los paquetes se toman y se sueltan desde el hilo de preparacion, que es el que pinta sus
+ * bitmaps, y el dump lo lee desde el principal, por eso va sincronizado.
+ */
+class PoolRecursos {
+
+    private final ArrayList<PaqueteRecursos> mPaquetes = new ArrayList<PaqueteRecursos>();
+    private final CacheBitmaps mCacheBitmaps;
+
+    //contadores para el dumpsys
+    private int mCreados;
+    private int mCompartidos;
+
+    PoolRecursos(CacheBitmaps cacheBitmaps) {
+        mCacheBitmaps = cacheBitmaps;
+    }
+
+    /**
+     * toma el paquete para la pantalla de la disposicion, el anio y el tema, creandolo si no
+     * lo usa nadie
+     */
+    synchronized PaqueteRecursos obtener(Disposicion disposicion, int anio, Tema tema) {
+        for (int i = 0; i < mPaquetes.size(); i++) {
+            PaqueteRecursos paquete = mPaquetes.get(i);
+            if (paquete.width == disposicion.width && paquete.height == disposicion.height
+                    && paquete.anio == anio && paquete.tema == tema) {
+                paquete.referencias++;
+                mCompartidos++;
+                return paquete;
+            }
+        }
+        PaqueteRecursos paquete = new PaqueteRecursos(disposicion, anio, tema, mCacheBitmaps);
+        paquete.referencias = 1;
+        mPaquetes.add(paquete);
+        mCreados++;
+        return paquete;
+    }
+
+    /**
+     * el motor deja de usar el paquete, si era el ultimo se liberan sus bitmaps
+     * @param paquete puede ser null si el motor no llego a tener superficie
+     */
+    synchronized void soltar(PaqueteRecursos paquete) {
+        if (paquete == null) {
+            return;
+        }
+        paquete.referencias--;
+        if (paquete.referencias <= 0) {
+            mPaquetes.remove(paquete);
+            paquete.liberar();
+        }
+    }
+
+    /**
+     * escribe los contadores en la salida del dump
+     */
+    synchronized void volcar(String prefijo, PrintWriter out) {
+        int referencias = 0;
+        for (int i = 0; i < mPaquetes.size(); i++) {
+            referencias += mPaquetes.get(i).referencias;
+        }
+        out.print(prefijo);
+        out.println("recursos paquetes=" + mPaquetes.size() + " referencias=" + referencias
+                + " creados=" + mCreados + " compartidos=" + mCompartidos);
+    }
+}
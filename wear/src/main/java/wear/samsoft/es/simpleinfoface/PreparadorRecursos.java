@@ -0,0 +1,239 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import java.io.File;
+import java.util.Calendar;
+
+import wear.samsoft.es.simpleinfoface.core.Disposicion;
+import wear.samsoft.es.simpleinfoface.core.FuenteTiempo;
+import wear.samsoft.es.simpleinfoface.core.Huella;
+import wear.samsoft.es.simpleinfoface.core.TablaDisposiciones;
+import wear.samsoft.es.simpleinfoface.core.Tema;
+
+/**
+ * Construye los RecursosFrame de un motor para cada peticion: la disposicion, la fecha
+ * medida, la capa estatica, las manecillas y el atlas. Es lo que hacia el onSurfaceChanged, lo
+ * usa el motor desde el hilo de preparacion y el test de frames directamente, asi los dos
+ * pintan con los mismos recursos.
+ *
+ * Cada motor tiene el suyo, la tabla de disposiciones, las caches y el pool son las del
+ * servicio. La tabla ya viene cargada, aqui solo se busca y se escribe cuando se anade una.
+ */
+class PreparadorRecursos {
+
+    /**
+     * version de lo que pintamos en la capa estatica y las manecillas, hay que subirla cuando
+     * cambie como se pintan para que no se lean de la cache de disco los bitmaps viejos
+     */
+    private static final int VERSION_CONTENIDO = 1;
+
+    private final CacheBitmaps mCacheBitmaps;
+    private final PoolRecursos mPoolRecursos;
+    private final CachePixeles mCachePixeles;
+    //disposiciones ya calculadas de todos los motores y otros arranques
+    private final TablaDisposiciones mTablaDisposiciones;
+    private final File mFicheroDisposiciones;
+
+    PreparadorRecursos(CacheBitmaps cacheBitmaps, PoolRecursos poolRecursos,
+                       CachePixeles cachePixeles, TablaDisposiciones tablaDisposiciones,
+                       File ficheroDisposiciones) {
+        mCacheBitmaps = cacheBitmaps;
+        mPoolRecursos = poolRecursos;
+        mCachePixeles = cachePixeles;
+        mTablaDisposiciones = tablaDisposiciones;
+        mFicheroDisposiciones = ficheroDisposiciones;
+    }
+
+    /**
+     * Calcula la disposicion, mide la fecha y pinta la capa estatica, las manecillas y el
+     * atlas para la peticion. Se llama en el hilo de preparacion, solo mide textos y pinta
+     * en bitmaps fuera de pantalla
+     */
+    RecursosFrame preparar(RecursosFrame.Peticion peticion) {
+        RecursosFrame recursos = new RecursosFrame(mCacheBitmaps, peticion.tema);
+        Disposicion disposicion = recursos.disposicion;
+
+        //tomamos la disposicion de los elementos para esta pantalla de la tabla guardada,
+        //si no esta la calculamos (en face-core) y la guardamos para el siguiente motor
+        if (!mTablaDisposiciones.buscar(peticion.width, peticion.height, peticion.redonda,
+                peticion.insetInferior, disposicion)) {
+            disposicion.calcular(peticion.width, peticion.height, peticion.redonda,
+                    peticion.insetInferior);
+            mTablaDisposiciones.guardar(disposicion);
+            mTablaDisposiciones.escribir(mFicheroDisposiciones);
+        }
+
+        //precalculamos las posiciones de manecillas y marcadores para este centro
+        recursos.geometria.configurar(disposicion.centerX, disposicion.centerY,
+                disposicion.width, disposicion.height,
+                disposicion.longMin, disposicion.longHrs);
+
+        //le damos medidas a la base del arco de los segundos y a los dos casilleros de la
+        //bateria, uno para el nivel y el otro es un marco
+        rectDe(disposicion.ovalSec, recursos.ovalSec);
+        rectDe(disposicion.casilleroBateria, recursos.casilleroBateria);
+        rectDe(disposicion.casilleroBateriaPadre, recursos.casilleroBateriaPadre);
+
+        //el dia de la peticion, con su propio Calendar para no tocar el del hilo principal
+        Calendar calendar = Calendar.getInstance(peticion.zona);
+        calendar.setTimeInMillis(peticion.ahora);
+        FuenteTiempo fuente = new FuenteTiempo(peticion.zona);
+        fuente.actualizar(peticion.ahora);
+        recursos.dia = TextoFecha.claveDia(calendar);
+        recursos.diaLocal = fuente.dia;
+
+        //tomamos los recursos para este tamanio, este anio y este tema, si otro motor ya los
+        //tiene se comparten (colores, efecto de los segundos, tamanios de texto y
+        //degradado de la bateria)
+        PaqueteRecursos paquete = mPoolRecursos.obtener(disposicion,
+                calendar.get(Calendar.YEAR), peticion.tema);
+        recursos.paquete = paquete;
+
+        //posiciones del texto de la bateria
+        recursos.yTextoBat = disposicion.centroTextoBatY - (paquete.altoTextoBat / 2);
+
+        //colocamos la fecha y la formateamos para el dia de la peticion
+        recursos.textoFecha.configurar(disposicion.offsetXTextoFecha,
+                disposicion.offsetYTextoFecha, disposicion.conAnio);
+        recursos.textoFecha.actualizar(calendar, recursos.dia, peticion.tema,
+                paquete.pincelBlancoSolido, paquete.pincelCyanSolido,
+                recursos.pincelCasilleroFecha);
+
+        //las zonas que responden a un toque, los arcos de la bateria con su grafica y el
+        //casillero de la fecha
+        recursos.toques.configurar(disposicion.width, disposicion.height);
+        recursos.toques.anadirOvalo(RecursosFrame.ZONA_BATERIA,
+                disposicion.casilleroBateriaPadre);
+        RectF fecha = new RectF(recursos.textoFecha.casillero);
+        fecha.sort();
+        recursos.toques.anadirRect(RecursosFrame.ZONA_FECHA,
+                new float[]{fecha.left, fecha.top, fecha.right, fecha.bottom});
+
+        //rasterizamos todos los textos con los tamanios de esta pantalla y pintamos las
+        //manecillas, si no lo ha hecho ya otro motor
+        construirAtlas(recursos);
+        construirSprites(recursos);
+        //con todo calculado pintamos la capa estatica, calculamos los segmentos del arco de
+        //los segundos y pintamos las manecillas de ambiente
+        construirCapaEstatica(recursos);
+        recursos.anillo.configurar(recursos.ovalSec, paquete.pincelAzulBlur,
+                disposicion.width, disposicion.height);
+        recursos.ambiente.setPropiedades(peticion.bajoBit, peticion.proteccionQuemado);
+        recursos.ambiente.preparar(disposicion.longMin, disposicion.longHrs);
+        return recursos;
+    }
+
+    /**
+     * copia en un RectF un rectangulo de la disposicion
+     */
+    private static void rectDe(float[] r, RectF rect) {
+        rect.set(r[0], r[1], r[2], r[3]);
+    }
+
+    /**
+     * rasteriza los textos en el atlas si no lo esta o tiene otro anio
+     */
+    private void construirAtlas(RecursosFrame recursos) {
+        PaqueteRecursos paquete = recursos.paquete;
+        int anio = recursos.textoFecha.anio;
+        if (paquete.atlas.necesitaConstruir(anio)) {
+            paquete.atlas.construir(paquete.pincelInfoBat, paquete.pincelBlancoSolido,
+                    paquete.pincelCyanSolido, anio);
+        } else {
+            //ya lo tenia otro motor, o estos recursos antes, y sigue en la cache
+            mCacheBitmaps.acierto();
+        }
+    }
+
+    /**
+     * Pinta las manecillas del modo interactivo con sus pinceles de brillo en los sprites,
+     * solo si ha cambiado su longitud y no estan ya en la cache de disco. Las de ambiente
+     * las lleva el RenderAmbiente
+     */
+    private void construirSprites(RecursosFrame recursos) {
+        PaqueteRecursos paquete = recursos.paquete;
+        Tema tema = paquete.tema;
+        construirSprite(paquete.spriteMinutos, "minutos_" + tema.id,
+                recursos.disposicion.longMin, paquete.pincelMinutos, tema.brilloManecillas);
+        construirSprite(paquete.spriteHoras, "horas_" + tema.id,
+                recursos.disposicion.longHrs, paquete.pincelHoras, tema.brilloManecillas);
+    }
+
+    private void construirSprite(SpriteManecilla sprite, String nombre, float longitud,
+                                 Paint pincel, float radioBrillo) {
+        if (!sprite.necesitaReconstruir(longitud, false)) {
+            mCacheBitmaps.acierto();
+            return;
+        }
+        long huella = new Huella().mas(VERSION_CONTENIDO).mas(longitud)
+                .mas(pincel.getStrokeWidth()).mas(pincel.getColor())
+                .mas(radioBrillo).valor();
+        if (!sprite.cargar(mCachePixeles, nombre, huella, longitud, false, pincel,
+                radioBrillo)) {
+            sprite.construir(longitud, false, pincel, radioBrillo);
+            sprite.guardar(mCachePixeles, nombre, huella);
+        }
+    }
+
+    /**
+     * Pinta en la capa estatica todo lo que no cambia entre frames del modo interactivo, el
+     * fondo negro, los marcadores de las horas, el marco de la bateria y el casillero de la
+     * fecha. Asi el onDraw no tiene que repetir el bucle de los marcadores en cada frame.
+     * Si ya esta pintada para este tamanio y este dia la leemos de la cache de disco.
+     */
+    private void construirCapaEstatica(RecursosFrame recursos) {
+        PaqueteRecursos paquete = recursos.paquete;
+        RectF fecha = recursos.textoFecha.casillero;
+        RectF marcoBat = recursos.casilleroBateriaPadre;
+        int w = recursos.disposicion.width;
+        int h = recursos.disposicion.height;
+        int dia = recursos.dia;
+        String nombre = "capa_" + paquete.tema.id;
+        long huella = paquete.tema.huella(new Huella().mas(VERSION_CONTENIDO).mas(dia))
+                .mas(fecha.left).mas(fecha.top).mas(fecha.right).mas(fecha.bottom)
+                .mas(marcoBat.left).mas(marcoBat.top)
+                .mas(marcoBat.right).mas(marcoBat.bottom)
+                .valor();
+        if (recursos.capa.cargar(mCachePixeles, nombre, huella, w, h, false, dia)) {
+            return;
+        }
+        Canvas capa = recursos.capa.empezar(w, h, false, dia);
+
+        //pintamos el fondo, en este caso es el color negro sin imagen
+        capa.drawRect(0, 0, w, h, paquete.pincelFondo);
+
+        //pintamos los indicadores de la hora una sola vez en la capa, sus extremos
+        //ya los tenemos calculados en la geometria
+        capa.drawLines(recursos.geometria.marcadores, paquete.pincelMarcadoresHoras);
+
+        //pintamos el casillero de la fecha
+        capa.drawRect(fecha, recursos.pincelCasilleroFecha);
+
+        //pintamos el marco de la bateria
+        capa.drawArc(marcoBat,
+                0f, 360f,
+                false,
+                paquete.pincelMarcoBat
+        );
+
+        recursos.capa.guardar(mCachePixeles, nombre, huella);
+    }
+}
@@ -0,0 +1,159 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Proveedor del estado de la bateria. Se registra una sola vez para toda la vida del motor,
+ * junta las rafagas de ACTION_BATTERY_CHANGED (el sistema lo manda cada vez que cambia la
+ * temperatura o el voltaje) y solo avisa cuando cambia el porcentaje o el estado de carga.
+ *
+ * El nivel y la carga se guardan juntos en un unico entero para poder leerlos a la vez desde
+ * el onDraw sin ver medio estado.
+ */
+class ProveedorBateria extends BroadcastReceiver {
+
+    //tiempo que esperamos para juntar varios avisos seguidos en uno
+    private static final long RETARDO_AGRUPAR_MS = 500;
+
+    //el estado empaquetado: nivel en los 8 bits bajos (0xFF si no hay lectura) y carga en el 9
+    private static final int SIN_LECTURA = 0xFF;
+    private static final int BIT_CARGANDO = 0x100;
+
+    /**
+     * recibe los cambios de la bateria ya agrupados
+     */
+    interface Oyente {
+        /**
+         * @param cambiaNivel si ha cambiado el porcentaje que se pinta
+         * @param cambiaCarga si ha cambiado el estado de carga
+         */
+        void onBateriaCambiada(boolean cambiaNivel, boolean cambiaCarga);
+    }
+
+    private final Context mContext;
+    private final Oyente mOyente;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    //ultimo estado leido del broadcast y ultimo estado avisado al oyente
+    private volatile int mEstado = SIN_LECTURA;
+    private int mPublicado = SIN_LECTURA;
+
+    private boolean mRegistrado = false;
+    private boolean mPendiente = false;
+
+    //publica el estado una vez pasado el tiempo de agrupar
+    private final Runnable mPublicar = new Runnable() {
+        @Override
+        public void run() {
+            mPendiente = false;
+            publicar();
+        }
+    };
+
+    ProveedorBateria(Context context, Oyente oyente) {
+        mContext = context;
+        mOyente = oyente;
+    }
+
+    /**
+     * registra el broadcast, como es sticky nos devuelve al momento el ultimo estado
+     */
+    void registrar() {
+        if (mRegistrado) {
+            return;
+        }
+        mRegistrado = true;
+        Intent ultimo = mContext.registerReceiver(this,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (ultimo != null) {
+            mEstado = leer(ultimo);
+            publicar();
+        }
+    }
+
+    /**
+     * desregistra el broadcast, solo al destruir el motor
+     */
+    void desregistrar() {
+        if (!mRegistrado) {
+            return;
+        }
+        mRegistrado = false;
+        mHandler.removeCallbacks(mPublicar);
+        mPendiente = false;
+        mContext.unregisterReceiver(this);
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        mEstado = leer(intent);
+        //si ya hay un aviso pendiente este cambio ira en el mismo
+        if (!mPendiente) {
+            mPendiente = true;
+            mHandler.postDelayed(mPublicar, RETARDO_AGRUPAR_MS);
+        }
+    }
+
+    /**
+     * @return el estado empaquetado, se descompone con nivel() y cargando()
+     */
+    int getEstado() {
+        return mEstado;
+    }
+
+    /**
+     * @return el porcentaje de bateria o -1 si todavia no hay lectura
+     */
+    static int nivel(int estado) {
+        int nivel = estado & SIN_LECTURA;
+        return nivel == SIN_LECTURA ? -1 : nivel;
+    }
+
+    /**
+     * @return true si el reloj esta cargando
+     */
+    static boolean cargando(int estado) {
+        return (estado & BIT_CARGANDO) != 0;
+    }
+
+    private void publicar() {
+        int estado = mEstado;
+        boolean cambiaNivel = nivel(estado) != nivel(mPublicado);
+        boolean cambiaCarga = cargando(estado) != cargando(mPublicado);
+        mPublicado = estado;
+        if (cambiaNivel || cambiaCarga) {
+            mOyente.onBateriaCambiada(cambiaNivel, cambiaCarga);
+        }
+    }
+
+    private static int leer(Intent intent) {
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, 100);
+        int estado = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        int nivel = level < 0 || scale <= 0 ? SIN_LECTURA : Math.min(100, level * 100 / scale);
+        boolean cargando = estado == BatteryManager.BATTERY_STATUS_CHARGING
+                || estado == BatteryManager.BATTERY_STATUS_FULL;
+        return nivel | (cargando ? BIT_CARGANDO : 0);
+    }
+}
@@ -0,0 +1,131 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+
+package wear.samsoft.es.simpleinfoface;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataEvent;
+import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
+import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import wear.samsoft.es.simpleinfoface.core.Tema;
+
+/**
+ * Recibe de la app del movil el tema elegido por la Data API y lo guarda en las preferencias
+ * del reloj, asi se conserva aunque maten el proceso. Los motores escuchan las preferencias y
+ * piden sus recursos con el tema nuevo, aqui no se toca ningun pincel.
+ *
+ * Lo crea el servicio, que lo conecta en su onCreate y lo desconecta en su onDestroy. Al
+ * conectar lee tambien el tema que ya estuviera publicado, por si se eligio con el reloj
+ * apagado.
+ */
+class ReceptorTemas implements DataApi.DataListener, GoogleApiClient.ConnectionCallbacks {
+
+    //preferencias del reloj donde guardamos el tema
+    static final String PREFERENCIAS = "simpleinfoface";
+    static final String PREF_TEMA = "tema";
+
+    private final GoogleApiClient mCliente;
+    private final SharedPreferences mPreferencias;
+
+    ReceptorTemas(Context context) {
+        mPreferencias = preferencias(context);
+        mCliente = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .addConnectionCallbacks(this)
+                .build();
+    }
+
+    /**
+     * las preferencias donde esta el tema elegido
+     */
+    static SharedPreferences preferencias(Context context) {
+        return context.getSharedPreferences(PREFERENCIAS, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return el tema guardado, o el de siempre si no se ha elegido ninguno
+     */
+    static Tema leer(SharedPreferences preferencias) {
+        return Tema.porId(preferencias.getString(PREF_TEMA, null));
+    }
+
+    void conectar() {
+        mCliente.connect();
+    }
+
+    void desconectar() {
+        if (mCliente.isConnected()) {
+            Wearable.DataApi.removeListener(mCliente, this);
+        }
+        mCliente.disconnect();
+    }
+
+    @Override
+    public void onConnected(Bundle bundle) {
+        Wearable.DataApi.addListener(mCliente, this);
+        //el tema que ya estuviera publicado por el movil
+        Uri uri = new Uri.Builder().scheme(PutDataRequest.WEAR_URI_SCHEME)
+                .path(Tema.RUTA_DATOS).build();
+        Wearable.DataApi.getDataItems(mCliente, uri).setResultCallback(
+                new ResultCallback<DataItemBuffer>() {
+                    @Override
+                    public void onResult(DataItemBuffer items) {
+                        for (int i = 0; i < items.getCount(); i++) {
+                            guardar(items.get(i));
+                        }
+                        items.release();
+                    }
+                });
+    }
+
+    @Override
+    public void onConnectionSuspended(int causa) {
+        //el cliente se vuelve a conectar solo, hasta entonces seguimos con el tema guardado
+    }
+
+    @Override
+    public void onDataChanged(DataEventBuffer eventos) {
+        for (int i = 0; i < eventos.getCount(); i++) {
+            DataEvent evento = eventos.get(i);
+            if (evento.getType() == DataEvent.TYPE_CHANGED
+                    && Tema.RUTA_DATOS.equals(evento.getDataItem().getUri().getPath())) {
+                guardar(evento.getDataItem());
+            }
+        }
+    }
+
+    //solo escribimos si cambia, las preferencias avisan a los motores en el hilo principal
+    private void guardar(DataItem item) {
+        String recibido =
+                DataMapItem.fromDataItem(item).getDataMap().getString(Tema.CLAVE_DATOS);
+        String id = Tema.porId(recibido).id;
+        if (!id.equals(mPreferencias.getString(PREF_TEMA, null))) {
+            mPreferencias.edit().putString(PREF_TEMA, id).apply();
+        }
+    }
+}
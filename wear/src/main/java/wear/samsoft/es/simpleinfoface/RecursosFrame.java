@@ -0,0 +1,228 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+
+package wear.samsoft.es.simpleinfoface;
+
+import android.graphics.BlurMaskFilter;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import java.util.TimeZone;
+
+import wear.samsoft.es.simpleinfoface.core.Disposicion;
+import wear.samsoft.es.simpleinfoface.core.Geometria;
+import wear.samsoft.es.simpleinfoface.core.IndiceToques;
+import wear.samsoft.es.simpleinfoface.core.MetricasFrame;
+import wear.samsoft.es.simpleinfoface.core.PreparadorFrame;
+import wear.samsoft.es.simpleinfoface.core.Tema;
+
+/**
+ * Todo lo que necesita un motor para pintar sus frames en una pantalla y un dia: la
+ * disposicion, la geometria, la fecha ya medida, la capa estatica, el arco de los segundos,
+ * el pintado de ambiente y el PaqueteRecursos compartido con los pinceles del Tema. Lo
+ * construye entero el hilo de preparacion y lo publica ya terminado, el hilo principal lo
+ * cambia por el anterior al empezar un frame y hasta entonces sigue pintando con el que tenia.
+ *
+ * Una vez publicado nadie lo modifica, solo el hilo principal va encendiendo segmentos en el
+ * bitmap del arco. Si algo deja de valer (otra pantalla, otro dia, otro tema, la cache ha
+ * soltado un bitmap) se construye otro, asi cambiar de tema o de modo nunca toca un pincel a
+ * mitad de un frame.
+ *
+ * Tambien sabe pintar un frame con lo que calcula el PreparadorFrame, el onDraw del motor y el
+ * test de frames pintan por el mismo camino.
+ */
+class RecursosFrame {
+
+    /**
+     * zonas de la pantalla que responden a un toque, los arcos de la bateria cambian la vista
+     * del historial y el casillero de la fecha su formato
+     */
+    static final int ZONA_BATERIA = 0;
+    static final int ZONA_FECHA = 1;
+
+    /**
+     * lo que pide el motor al hilo de preparacion, una copia para que el hilo principal
+     * pueda seguir cambiando sus campos mientras se prepara
+     */
+    static final class Peticion {
+        final int width;
+        final int height;
+        final boolean redonda;
+        final int insetInferior;
+        //hora para la que se prepara la fecha y su zona horaria
+        final long ahora;
+        final TimeZone zona;
+        //propiedades de la pantalla en ambiente
+        final boolean bajoBit;
+        final boolean proteccionQuemado;
+        //el tema elegido en la app del movil
+        final Tema tema;
+
+        Peticion(int width, int height, boolean redonda, int insetInferior, long ahora,
+                 TimeZone zona, boolean bajoBit, boolean proteccionQuemado, Tema tema) {
+            this.width = width;
+            this.height = height;
+            this.redonda = redonda;
+            this.insetInferior = insetInferior;
+            this.ahora = ahora;
+            this.zona = zona;
+            this.bajoBit = bajoBit;
+            this.proteccionQuemado = proteccionQuemado;
+            this.tema = tema;
+        }
+    }
+
+    //disposicion de los elementos y posiciones precalculadas de manecillas y marcadores
+    final Disposicion disposicion = new Disposicion();
+    final Geometria geometria = new Geometria();
+    //base del arco de los segundos y los dos casilleros de la bateria
+    final RectF ovalSec = new RectF();
+    final RectF casilleroBateria = new RectF();
+    final RectF casilleroBateriaPadre = new RectF();
+    //posicion del texto de la bateria
+    float yTextoBat;
+    //zonas que responden a un toque en esta pantalla
+    final IndiceToques toques = new IndiceToques();
+    //la fecha ya formateada y medida con su casillero
+    final TextoFecha textoFecha = new TextoFecha();
+    //el casillero de la fecha es de cada motor, su degradado cambia con el dia
+    final Paint pincelCasilleroFecha = new Paint();
+    //capa con los elementos que no cambian entre frames
+    final CapaEstatica capa;
+    //arco de los segundos, se va pintando segundo a segundo
+    final AnilloSegundos anillo;
+    //pintado del modo ambiente con sus propias manecillas, sin brillo
+    final RenderAmbiente ambiente;
+    //pinceles, manecillas y textos compartidos con los demas motores con la misma pantalla
+    PaqueteRecursos paquete;
+    //clave del dia de la fecha y dia local de la FuenteTiempo para el que se preparo
+    int dia;
+    long diaLocal;
+
+    RecursosFrame(CacheBitmaps cache, Tema tema) {
+        capa = new CapaEstatica(cache);
+        anillo = new AnilloSegundos(cache);
+        ambiente = new RenderAmbiente(cache, tema);
+
+        //se utilizara para pintar el marco de la fecha
+        pincelCasilleroFecha.setStrokeWidth(3f);
+        pincelCasilleroFecha.setAntiAlias(true);
+        pincelCasilleroFecha.setStyle(Paint.Style.STROKE);
+        pincelCasilleroFecha.setStrokeCap(Paint.Cap.ROUND);
+        pincelCasilleroFecha.setMaskFilter(new BlurMaskFilter(2f, BlurMaskFilter.Blur.INNER));
+    }
+
+    /**
+     * nos dice si siguen pintados todos los bitmaps del modo, la cache de bitmaps los puede
+     * haber soltado por falta de memoria
+     */
+    boolean completo(boolean enAmbiente) {
+        float longMin = disposicion.longMin;
+        float longHrs = disposicion.longHrs;
+        if (enAmbiente) {
+            return ambiente.listo(longMin, longHrs);
+        }
+        return !capa.necesitaReconstruir(disposicion.width, disposicion.height, false, dia)
+                && anillo.vigente()
+                && !paquete.spriteMinutos.necesitaReconstruir(longMin, false)
+                && !paquete.spriteHoras.necesitaReconstruir(longHrs, false)
+                && !paquete.atlas.necesitaConstruir(textoFecha.anio);
+    }
+
+    /**
+     * pinta un frame interactivo entero con lo que ha calculado el preparador
+     * @param nivel porcentaje de bateria o -1 si no hay lectura
+     * @param conSegundos false en ahorro de bateria, sin el arco de los segundos
+     * @param conBrillo false en ahorro de bateria, el arco de la bateria sin desenfoque
+     * @param lineas la grafica del historial como segmentos para drawLines
+     * @param longitudLineas cuantos valores de lineas hay que pintar
+     * @param metricas donde se marca el final de cada fase del frame
+     */
+    void dibujar(Canvas canvas, PreparadorFrame preparador, int nivel, boolean conSegundos,
+                 boolean conBrillo, float[] lineas, int longitudLineas, MetricasFrame metricas) {
+        PaqueteRecursos recursos = paquete;
+
+        //pintamos el fondo y todo lo que no cambia entre frames desde la capa estatica
+        capa.dibujar(canvas);
+        metricas.marcarFase(MetricasFrame.FASE_CAPA, System.nanoTime());
+
+        //pintamos el arco desde las 12 en punto, el anillo solo anade el segmento del
+        //segundo nuevo a los que ya tenia. En ahorro de bateria no hay segundos
+        if (conSegundos) {
+            anillo.dibujar(canvas, preparador.finSec);
+        }
+        metricas.marcarFase(MetricasFrame.FASE_SEGUNDOS, System.nanoTime());
+
+        //pintamos la fecha desde el atlas, cada palabra con el color de su trozo
+        textoFecha.dibujar(canvas, recursos.atlas);
+        metricas.marcarFase(MetricasFrame.FASE_FECHA, System.nanoTime());
+
+        if (nivel != -1) {
+            //si hemos obtenido lectura de la bateria la mostraremos
+            //pintamos el nivel bateria en forma de arco
+            canvas.drawArc(casilleroBateria,
+                    -90f, nivel * 3.6f,
+                    false,
+                    conBrillo ? recursos.pincelCasilleroBateria
+                            : recursos.pincelCasilleroBateriaSinBrillo
+            );
+        }
+        //pintamos el texto dentro del arco desde el atlas, centrado con su ancho, si no
+        //hay lectura pintamos "0%"
+        int entradaBat = AtlasGlifos.PORCENTAJES + Math.max(0, Math.min(nivel, 100));
+        recursos.atlas.dibujar(canvas, entradaBat,
+                disposicion.centroTextoBatX - recursos.atlas.avance(entradaBat) / 2f,
+                yTextoBat);
+        //y debajo la grafica del historial, ya calculada al preparar el frame
+        if (longitudLineas > 0) {
+            canvas.drawLines(lineas, 0, longitudLineas, recursos.pincelHistorial);
+        }
+        metricas.marcarFase(MetricasFrame.FASE_BATERIA, System.nanoTime());
+
+        // Pintamos las manecillas de las horas y los minutos desde sus sprites,
+        // rotandolos alrededor del centro
+        float centerX = disposicion.centerX;
+        float centerY = disposicion.centerY;
+        recursos.spriteMinutos.dibujar(canvas, centerX, centerY,
+                preparador.tiempo.minutos * 6f, recursos.pincelSprites);
+        recursos.spriteHoras.dibujar(canvas, centerX, centerY,
+                preparador.tiempo.horas * 30f, recursos.pincelSprites);
+    }
+
+    /**
+     * el modo ambiente va por su propio camino, solo fondo y manecillas sin brillo colocadas
+     * en el minuto, desplazadas si la pantalla lo necesita
+     */
+    void dibujarAmbiente(Canvas canvas, PreparadorFrame preparador) {
+        ambiente.dibujar(canvas,
+                disposicion.centerX + preparador.desplazamientoX,
+                disposicion.centerY + preparador.desplazamientoY,
+                preparador.tiempo.minutos * 6f, preparador.tiempo.horas * 30f);
+    }
+
+    /**
+     * devuelve los bitmaps y suelta el paquete, se llama desde el hilo de preparacion cuando
+     * el hilo principal ya no lo pinta
+     */
+    void liberar(PoolRecursos pool) {
+        capa.liberar();
+        anillo.liberar();
+        ambiente.liberar();
+        pool.soltar(paquete);
+        paquete = null;
+    }
+}
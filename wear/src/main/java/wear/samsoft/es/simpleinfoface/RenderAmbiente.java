@@ -0,0 +1,138 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import wear.samsoft.es.simpleinfoface.core.Tema;
+
+/**
+ * Pintado del modo ambiente, separado del interactivo. Solo lleva el fondo negro y las dos
+ * manecillas, pintadas una sola vez en sus sprites con los colores de ambiente del Tema, sin
+ * brillo ni degradados.
+ *
+ * Respeta las propiedades de la pantalla: con bajo bit quitamos el antialias y el filtrado y
+ * dejamos solo blanco, y con proteccion contra quemado las manecillas son mas finas y todo se
+ * desplaza unos pixeles cada minuto para no dejar siempre los mismos pixeles encendidos (el
+ * desplazamiento lo calcula el PreparadorFrame).
+ *
+ * Cada RecursosFrame tiene el suyo, con los sprites ya pintados en el hilo de preparacion,
+ * asi el cambio a ambiente no tiene que pintar nada antes del primer frame.
+ */
+class RenderAmbiente {
+
+    //grosor de las manecillas, con proteccion de quemado encendemos menos pixeles
+    private static final float GROSOR = 6f;
+    private static final float GROSOR_QUEMADO = 3f;
+
+    private final Paint mPincelMinutos = new Paint();
+    private final Paint mPincelHoras = new Paint();
+    private final Paint mPincelSprites = new Paint();
+    private final SpriteManecilla mSpriteMinutos;
+    private final SpriteManecilla mSpriteHoras;
+    private final Tema mTema;
+
+    //propiedades de la pantalla
+    private boolean mBajoBit;
+    private boolean mProteccionQuemado;
+
+    /**
+     * @param cache donde se guardan los sprites, marcados como de ambiente
+     * @param tema de donde salen los colores de las manecillas
+     */
+    RenderAmbiente(CacheBitmaps cache, Tema tema) {
+        mTema = tema;
+        mSpriteMinutos = new SpriteManecilla(cache);
+        mSpriteHoras = new SpriteManecilla(cache);
+        mPincelMinutos.setStyle(Paint.Style.STROKE);
+        mPincelMinutos.setStrokeCap(Paint.Cap.ROUND);
+        mPincelHoras.setStyle(Paint.Style.STROKE);
+        mPincelHoras.setStrokeCap(Paint.Cap.ROUND);
+        aplicarPropiedades();
+    }
+
+    /**
+     * recoge las propiedades de la pantalla que nos llegan en el onPropertiesChanged
+     */
+    void setPropiedades(boolean bajoBit, boolean proteccionQuemado) {
+        if (bajoBit == mBajoBit && proteccionQuemado == mProteccionQuemado) {
+            return;
+        }
+        mBajoBit = bajoBit;
+        mProteccionQuemado = proteccionQuemado;
+        aplicarPropiedades();
+    }
+
+    /**
+     * pinta los sprites de las manecillas si no estan ya para estas longitudes, se llama desde
+     * el hilo de preparacion
+     */
+    void preparar(float longMin, float longHrs) {
+        if (mSpriteMinutos.necesitaReconstruir(longMin, true)) {
+            mSpriteMinutos.construir(longMin, true, mPincelMinutos, 0f);
+        }
+        if (mSpriteHoras.necesitaReconstruir(longHrs, true)) {
+            mSpriteHoras.construir(longHrs, true, mPincelHoras, 0f);
+        }
+    }
+
+    /**
+     * @return true si los sprites siguen pintados, la cache los puede haber soltado
+     */
+    boolean listo(float longMin, float longHrs) {
+        return !mSpriteMinutos.necesitaReconstruir(longMin, true)
+                && !mSpriteHoras.necesitaReconstruir(longHrs, true);
+    }
+
+    /**
+     * pinta el frame de ambiente entero con los sprites ya preparados
+     * @param centroX centro del reloj en X, ya desplazado
+     * @param centroY centro del reloj en Y, ya desplazado
+     * @param gradosMin angulo de la manecilla de los minutos
+     * @param gradosHrs angulo de la manecilla de las horas
+     */
+    void dibujar(Canvas canvas, float centroX, float centroY,
+                 float gradosMin, float gradosHrs) {
+        canvas.drawColor(Color.BLACK);
+        mSpriteMinutos.dibujar(canvas, centroX, centroY, gradosMin, mPincelSprites);
+        mSpriteHoras.dibujar(canvas, centroX, centroY, gradosHrs, mPincelSprites);
+    }
+
+    /**
+     * liberamos los sprites cuando el motor se destruye
+     */
+    void liberar() {
+        mSpriteMinutos.liberar();
+        mSpriteHoras.liberar();
+    }
+
+    private void aplicarPropiedades() {
+        float grosor = mProteccionQuemado ? GROSOR_QUEMADO : GROSOR;
+        mPincelMinutos.setStrokeWidth(grosor);
+        mPincelHoras.setStrokeWidth(grosor);
+        //con bajo bit no hay grises ni colores, las dos manecillas en blanco
+        mPincelMinutos.setColor(mBajoBit ? Color.WHITE : mTema.ambienteMinutos);
+        mPincelHoras.setColor(mBajoBit ? Color.WHITE : mTema.ambienteHoras);
+        mPincelMinutos.setAntiAlias(!mBajoBit);
+        mPincelHoras.setAntiAlias(!mBajoBit);
+        mPincelSprites.setAntiAlias(!mBajoBit);
+        mPincelSprites.setFilterBitmap(!mBajoBit);
+        mSpriteMinutos.invalidar();
+        mSpriteHoras.invalidar();
+    }
+}
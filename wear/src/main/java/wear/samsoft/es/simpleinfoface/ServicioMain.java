@@ -20,31 +20,41 @@
 
 package wear.samsoft.es.simpleinfoface;
 
+import android.app.ActivityManager;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.graphics.BlurMaskFilter;
+import android.content.SharedPreferences;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.DashPathEffect;
-import android.graphics.LinearGradient;
-import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.RectF;
-import android.graphics.Shader;
-import android.os.BatteryManager;
+import android.os.Bundle;
+import android.os.Debug;
 import android.os.Handler;
-import android.os.Message;
+import android.os.Looper;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
-import java.util.Calendar;
-import java.util.Locale;
+import wear.samsoft.es.simpleinfoface.core.FuenteTiempo;
+import wear.samsoft.es.simpleinfoface.core.Geometria;
+import wear.samsoft.es.simpleinfoface.core.GobernadorFrames;
+import wear.samsoft.es.simpleinfoface.core.HistorialBateria;
+import wear.samsoft.es.simpleinfoface.core.ListaDibujo;
+import wear.samsoft.es.simpleinfoface.core.MetricasFrame;
+import wear.samsoft.es.simpleinfoface.core.PreparadorFrame;
+import wear.samsoft.es.simpleinfoface.core.TablaDisposiciones;
+import wear.samsoft.es.simpleinfoface.core.Tema;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Clase encargada de manejar el servicio del reloj tiene que extender de CanvasWatchFaceService
@@ -53,10 +63,141 @@ public class ServicioMain extends CanvasWatchFaceService {
 
     /**
      * el tiempo de actualizacion en milisegundos del modo interactivo,
-     * lo actualizaremos una vez al segundo
+     * lo actualizaremos una vez al segundo con el tick del planificador de despertares
      */
-    private static final long INTERACTIVE_UPDATE = TimeUnit.SECONDS.toMillis(1);
+    private static final long INTERACTIVE_UPDATE = PlanificadorDespertares.ALINEACION_MS;
 
+    /**
+     * frames por segundo del modo interactivo, con MODO_1HZ los segundos saltan una vez por
+     * segundo y con los modos de 15, 30 o 60 fps el arco de los segundos avanza de forma fluida
+     */
+    private static final int MODO_FRAMES_INTERACTIVO = PlanificadorFrames.MODO_1HZ;
+
+    /**
+     * frames por segundo mientras el reloj esta cargando, ahi la energia no importa y los
+     * segundos van fluidos
+     */
+    private static final int MODO_FRAMES_CARGANDO = PlanificadorFrames.MODO_30FPS;
+
+    /**
+     * fichero de la tabla de disposiciones ya calculadas, en el almacenamiento de la app
+     */
+    private static final String FICHERO_DISPOSICIONES = "disposiciones.bin";
+
+    /**
+     * fichero con el historial de la bateria, en el almacenamiento de la app
+     */
+    private static final String FICHERO_HISTORIAL = "historial_bateria.bin";
+
+    /**
+     * margen alrededor de una zona tocada al repintarla, para el grosor y el brillo de su
+     * marco
+     */
+    private static final int MARGEN_ZONA = 6;
+
+    /**
+     * parte de la memoria de la app que pueden ocupar los bitmaps de la caratula, con un
+     * minimo para que quepan la capa estatica, las manecillas y el atlas de una pantalla grande
+     */
+    private static final int FRACCION_MEMORIA_BITMAPS = 16;
+    private static final long MINIMO_BYTES_BITMAPS = 4L * 1024 * 1024;
+
+    /**
+     * todos los bitmaps de los motores, con su limite de memoria, se crea en el onCreate
+     */
+    private CacheBitmaps mCacheBitmaps;
+
+    /**
+     * pinceles y bitmaps compartidos por todos los motores del servicio con la misma pantalla,
+     * los motores solo lo usan desde el hilo de preparacion
+     */
+    private PoolRecursos mPoolRecursos;
+
+    /**
+     * capa y manecillas ya pintadas de otras ejecuciones del proceso
+     */
+    private CachePixeles mCachePixeles;
+
+    /**
+     * disposiciones ya calculadas de otros arranques, una para todos los motores asi la
+     * caratula y la vista previa no se borran las suyas al escribir el fichero. Se carga al
+     * crear el servicio y solo la usa el hilo de preparacion
+     */
+    private TablaDisposiciones mTablaDisposiciones;
+    private File mFicheroDisposiciones;
+
+    /**
+     * hilo donde los motores preparan sus recursos, fuera del hilo que pinta
+     */
+    private HiloPreparacion mHiloPreparacion;
+
+    /**
+     * recibe el tema elegido en la app del movil y lo deja en las preferencias
+     */
+    private ReceptorTemas mReceptorTemas;
+
+    /**
+     * historial del nivel de bateria, uno para todo el servicio. Lo apuntan los motores y lo
+     * lee y escribe el hilo de preparacion
+     */
+    private final HistorialBateria mHistorial = new HistorialBateria();
+    private File mFicheroHistorial;
+
+    //escribe en el fichero las muestras que se han ido juntando
+    private final Runnable mGuardarHistorial = new Runnable() {
+        @Override
+        public void run() {
+            mHistorial.escribirPendientes(mFicheroHistorial);
+        }
+    };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        ActivityManager am = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+        long memoria = am.getMemoryClass() * 1024L * 1024L;
+        mCacheBitmaps = new CacheBitmaps(
+                Math.max(memoria / FRACCION_MEMORIA_BITMAPS, MINIMO_BYTES_BITMAPS));
+        mPoolRecursos = new PoolRecursos(mCacheBitmaps);
+        mCachePixeles = new CachePixeles(new File(getCacheDir(), "pixeles"));
+        mHiloPreparacion = new HiloPreparacion();
+        //el historial se lee fuera del hilo principal, lo que los motores apunten mientras
+        //tanto se junta detras de lo leido
+        mFicheroHistorial = new File(getFilesDir(), FICHERO_HISTORIAL);
+        mTablaDisposiciones = new TablaDisposiciones();
+        mFicheroDisposiciones = new File(getFilesDir(), FICHERO_DISPOSICIONES);
+        mHiloPreparacion.encargar(new Runnable() {
+            @Override
+            public void run() {
+                mHistorial.cargar(mFicheroHistorial);
+                //antes que cualquier peticion de los motores, que van detras en el hilo
+                mTablaDisposiciones.cargar(mFicheroDisposiciones);
+            }
+        });
+        mReceptorTemas = new ReceptorTemas(this);
+        mReceptorTemas.conectar();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mReceptorTemas.desconectar();
+        //los motores ya estan destruidos. Las muestras que falten por escribir se escriben en
+        //el hilo de preparacion detras de lo que ya tuviera encargado, asi nunca hay dos
+        //escrituras a la vez, y despues el hilo termina
+        mHiloPreparacion.encargar(mGuardarHistorial);
+        mHiloPreparacion.parar();
+    }
+
+    /**
+     * el sistema nos pide memoria, soltamos bitmaps de la cache segun el nivel. Los motores
+     * vuelven a pintar lo que les falte en su siguiente frame
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        mCacheBitmaps.recortar(level);
+    }
 
     @Override
     public Engine onCreateEngine() {
@@ -68,33 +209,27 @@ public class ServicioMain extends CanvasWatchFaceService {
      * necesarias en los elementos ui
      */
     private class Engine extends CanvasWatchFaceService.Engine {
-        //El id de mensaje para el Handler de la actualizacion de los segundos
-        static final int MSG_UPDATE_TIME = 0;
+        /**
+         * planificador de todos los repintados, junta los motivos de las distintas fuentes en
+         * un solo despertar alineado con el cambio de segundo
+         */
+        PlanificadorDespertares mDespertares;
 
         /**
-         * hilo que contiene un Handler para actualizar el tiempo en modo interactivo.
+         * recibe los despertares del planificador con todos los motivos juntos
          */
-        final ThreadLocal<Handler> mUpdateTimeHandler = new ThreadLocal<Handler>() {
+        final PlanificadorDespertares.Receptor mReceptorDespertares =
+                new PlanificadorDespertares.Receptor() {
             @Override
-            protected Handler initialValue() {
-                return new Handler() {
-                    @Override
-                    public void handleMessage(Message message) {
-                        switch (message.what) {
-                            case MSG_UPDATE_TIME:
-                                //invalidamos el canvas para que repinte
-                                invalidate();
-                                //preguntamos si estamos en modo interactivo
-                                if (isVisible() && !isInAmbientMode()) {
-                                    //actualizamos el tiempo
-                                    long timeMs = System.currentTimeMillis();
-                                    long delayMs = INTERACTIVE_UPDATE - (timeMs % INTERACTIVE_UPDATE);
-                                    mUpdateTimeHandler.get().sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-                                }
-                                break;
-                        }
-                    }
-                };
+            public boolean necesitaPantalla() {
+                return isVisible();
+            }
+
+            @Override
+            public void onDespertar(int motivos) {
+                //repintamos solo si se ha movido algo en pantalla, los motivos que cambian lo
+                //que se pinta ya han invalidado la lista de dibujo
+                repintarSiCambia();
             }
         };
 
@@ -103,14 +238,69 @@ public class ServicioMain extends CanvasWatchFaceService {
          * visible
          */
         private void updateTimer() {
-            mUpdateTimeHandler.get().removeMessages(MSG_UPDATE_TIME);
-            if (isVisible() && !isInAmbientMode()) {
-                mUpdateTimeHandler.get().sendEmptyMessage(MSG_UPDATE_TIME);
+            mPlanificador.parar();
+            if (!isVisible()) {
+                //nadie ve la caratula, no queda nada programado
+                mDespertares.parar();
+                return;
+            }
+            boolean interactivo = !isInAmbientMode();
+            if (interactivo && mPlanificador.esFluido()) {
+                //en modo fluido los frames los marca el vsync
+                mPlanificador.iniciar();
+            }
+            mDespertares.setPeriodico(interactivo && !mPlanificador.esFluido()
+                    && mGobernador.conSegundos());
+        }
+
+        /**
+         * elige la politica de frames segun la bateria y el modo, y si cambia la aplica al
+         * planificador, al preparador y a los pinceles del onDraw
+         */
+        private void aplicarPolitica() {
+            int estado = mBateria.getEstado();
+            if (!mGobernador.elegir(ProveedorBateria.nivel(estado),
+                    ProveedorBateria.cargando(estado), isInAmbientMode(),
+                    System.currentTimeMillis())) {
+                return;
             }
+            mPlanificador.setModo(mGobernador.getPolitica() == GobernadorFrames.POLITICA_CARGANDO
+                    ? MODO_FRAMES_CARGANDO : MODO_FRAMES_INTERACTIVO);
+            mPreparador.setSegundos(mGobernador.conSegundos());
+            mListaDibujo.invalidar();
+            updateTimer();
+            mDespertares.solicitar(PlanificadorDespertares.MOTIVO_MODO, 0);
         }
 
-        //la hora local
-        Calendar mCalendar = Calendar.getInstance(TimeZone.getTimeZone(TimeZone.getDefault().getID()));
+        /**
+         * elige cada cuanto y con que calidad se pinta segun la bateria, apunta el gasto de
+         * cada politica para el dumpsys
+         */
+        GobernadorFrames mGobernador;
+
+        /**
+         * planificador de los modos fluidos, pide un frame en el vsync segun los fps elegidos
+         */
+        PlanificadorFrames mPlanificador;
+
+        /**
+         * recibe los frames del planificador mientras seamos visibles y estemos en modo
+         * interactivo
+         */
+        final PlanificadorFrames.Receptor mReceptorFrames = new PlanificadorFrames.Receptor() {
+            @Override
+            public boolean debeAnimar() {
+                return isVisible() && !isInAmbientMode();
+            }
+
+            @Override
+            public void onFrame() {
+                repintarSiCambia();
+            }
+        };
+
+        //la hora local de cada frame, con el desfase de la zona guardado
+        final FuenteTiempo mFuenteTiempo = new FuenteTiempo(TimeZone.getDefault());
 
         //variable de control de los broadcast del cambio de zona horari
         boolean mRegisteredTimeZoneReceiver = false;
@@ -121,39 +311,90 @@ public class ServicioMain extends CanvasWatchFaceService {
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getTimeZone(intent.getStringExtra("time-zone")));
+                //la fuente de tiempo vuelve a pedir el desfase a la nueva zona
+                mFuenteTiempo.setZona(TimeZone.getTimeZone(intent.getStringExtra("time-zone")));
+                //con otra zona horaria puede cambiar el dia, preparamos la fecha de nuevo y
+                //hasta que llegue se sigue pintando la anterior
+                solicitarRecursos();
+                mListaDibujo.invalidar();
+                mDespertares.solicitar(PlanificadorDespertares.MOTIVO_ZONA, 0);
             }
         };
 
         /**
-         * broadcast para leer el nivel de bateria del reloj
+         * estado de la bateria del reloj, registrado durante toda la vida del motor
          */
-        final BroadcastReceiver mBatteryReceiver = new BroadcastReceiver() {
+        ProveedorBateria mBateria;
+
+        /**
+         * recibe los cambios de bateria ya agrupados, solo repintamos si cambia el porcentaje
+         * y lo estamos mostrando
+         */
+        final ProveedorBateria.Oyente mOyenteBateria = new ProveedorBateria.Oyente() {
             @Override
-            public void onReceive(Context context, Intent intent) {
-                level= intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            public void onBateriaCambiada(boolean cambiaNivel, boolean cambiaCarga) {
+                //apuntamos el cambio en el historial y lo escribimos por lotes
+                int estado = mBateria.getEstado();
+                if (mHistorial.anadir(System.currentTimeMillis(),
+                        ProveedorBateria.nivel(estado), ProveedorBateria.cargando(estado))
+                        && mHistorial.getPendientes() >= HistorialBateria.LOTE) {
+                    mHiloPreparacion.encargar(mGuardarHistorial);
+                }
+                //con otro nivel o al enchufarlo puede tocar otra politica de frames
+                aplicarPolitica();
+                //puede esperar al siguiente tick de los segundos
+                if (cambiaNivel && !isInAmbientMode()) {
+                    mDespertares.solicitar(PlanificadorDespertares.MOTIVO_BATERIA,
+                            PlanificadorDespertares.ALINEACION_MS);
+                }
             }
         };
 
-        //nivel de bateria que actualizaremos en el broadcast
+        //nivel de bateria del frame, lo tomamos del proveedor al preparar cada frame
         int level=-1;
 
-        // Constantes para control son los radiantes
-        final float TWO_PI = (float) Math.PI * 2f;//2f es la circunferencia entera
-        final float PI = (float) Math.PI;//media circunferencia
-
-        //pinceles para dar formato a lo que pintaremos, fondos lineas, letras, etc
-        Paint mBackgroundPaint=new Paint();
-        Paint pincelAzulBlur = new Paint();
-        Paint mMinutePaint = new Paint();
-        Paint pincelCyanSolido = new Paint();
-        Paint mHourPaint = new Paint();
-        Paint pincelBlancoSolido = new Paint();
-        Paint pincelCasilleroFecha = new Paint();
-        Paint pincelCasilleroBateria=new Paint();
-        Paint pincelMarcadoresHoras=new Paint();
-        Paint pincelMarcoBat=new Paint();
-        Paint pincelInfoBat=new Paint();
+        //los recursos con los que pintamos, disposicion, fecha, capa estatica y pinceles
+        //compartidos. Solo los toca el hilo principal, null hasta que llegan los primeros
+        RecursosFrame mFrame;
+        //los ultimos que ha terminado el hilo de preparacion, los toma el siguiente frame
+        final AtomicReference<RecursosFrame> mListos = new AtomicReference<RecursosFrame>();
+        //lo que se le pidio al hilo de preparacion la ultima vez
+        volatile RecursosFrame.Peticion mPeticion;
+        //true cuando el motor se destruye, lo que se termine despues se suelta sin publicarlo
+        volatile boolean mDestruido;
+        //ya se han pedido recursos nuevos porque a los actuales les falta algun bitmap
+        boolean mReparacionPedida;
+        //dia local para el que ya se han pedido recursos nuevos
+        long mDiaPedido = Long.MIN_VALUE;
+        //para avisar al hilo principal desde el de preparacion
+        final Handler mHandlerPrincipal = new Handler(Looper.getMainLooper());
+
+        //preferencias del reloj con el tema elegido y el tema con el que pedimos los recursos
+        SharedPreferences mPreferencias;
+        Tema mTema = Tema.CYAN;
+
+        /**
+         * el ReceptorTemas ha guardado otro tema, pedimos los recursos ya compilados con el y
+         * hasta que lleguen se sigue pintando con el anterior
+         */
+        final SharedPreferences.OnSharedPreferenceChangeListener mOyenteTema =
+                new SharedPreferences.OnSharedPreferenceChangeListener() {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences preferencias, String clave) {
+                if (!ReceptorTemas.PREF_TEMA.equals(clave)) {
+                    return;
+                }
+                Tema tema = ReceptorTemas.leer(preferencias);
+                if (tema != mTema) {
+                    mTema = tema;
+                    solicitarRecursos();
+                }
+            }
+        };
+
+        //propiedades de la pantalla en ambiente, nos llegan en el onPropertiesChanged
+        boolean mBajoBit;
+        boolean mProteccionQuemado;
 
         //indicador Ambient mode se actualiza en el metodo onAmbientModeChange
         boolean mAmbient;
@@ -161,6 +402,8 @@ public class ServicioMain extends CanvasWatchFaceService {
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
+            //medimos desde aqui hasta el primer frame pintado
+            mInicioMotorNanos = System.nanoTime();
 
             //Preparamos el estilo de la caratula como los modos de tarjetas y si queremos mostrar
             //la hora del sistema
@@ -168,292 +411,169 @@ public class ServicioMain extends CanvasWatchFaceService {
                     .setCardPeekMode(WatchFaceStyle.PEEK_MODE_VARIABLE)
                     .setBackgroundVisibility(WatchFaceStyle.BACKGROUND_VISIBILITY_INTERRUPTIVE)
                     .setShowSystemUiTime(false)
+                    .setAcceptsTapEvents(true)
                     .build());
 
             //seteamos la zona horaria
-            mCalendar.setTimeZone(TimeZone.getDefault());
-
-            //preparamos el fondo, en este caso no tiene imagen y el fondo es de color negro
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(Color.BLACK);
-
-            //se utilizara para pintar los segundos
-            pincelAzulBlur.setStyle(Paint.Style.STROKE);
-            pincelAzulBlur.setColor(Color.CYAN);
-            pincelAzulBlur.setAntiAlias(true);
-            pincelAzulBlur.setMaskFilter(new BlurMaskFilter(10f, BlurMaskFilter.Blur.OUTER));
-            pincelAzulBlur.setStrokeJoin(Paint.Join.ROUND);
-            pincelAzulBlur.setStrokeWidth(15f);
-
-            //se utilizara para pintar los minutos
-            mMinutePaint.setColor(Color.WHITE);
-            mMinutePaint.setStrokeWidth(10f);
-            mMinutePaint.setAntiAlias(true);
-            mMinutePaint.setStrokeCap(Paint.Cap.ROUND);
-            mMinutePaint.setMaskFilter(new BlurMaskFilter(8f, BlurMaskFilter.Blur.SOLID));
-
-            //se utilizara para pintar las horas
-            mHourPaint.setColor(Color.CYAN);
-            mHourPaint.setStrokeWidth(10f);
-            mHourPaint.setAntiAlias(true);
-            mHourPaint.setStrokeCap(Paint.Cap.ROUND);
-            mHourPaint.setMaskFilter(new BlurMaskFilter(8f, BlurMaskFilter.Blur.SOLID));
-
-            //se utilizara para pintar la fecha
-            pincelCyanSolido.setColor(Color.CYAN);
-            pincelCyanSolido.setAntiAlias(true);
-            pincelCyanSolido.setMaskFilter(new BlurMaskFilter(2f, BlurMaskFilter.Blur.SOLID));
-
-            //se utilizara para pintar la fecha
-            pincelBlancoSolido.setColor(Color.WHITE);
-            pincelBlancoSolido.setAntiAlias(true);
-            pincelBlancoSolido.setMaskFilter(new BlurMaskFilter(2f, BlurMaskFilter.Blur.SOLID));
-
-            //se utilizara para pintar el marco de la fecha
-            pincelCasilleroFecha.setStrokeWidth(3f);
-            pincelCasilleroFecha.setAntiAlias(true);
-            pincelCasilleroFecha.setStyle(Paint.Style.STROKE);
-            pincelCasilleroFecha.setStrokeCap(Paint.Cap.ROUND);
-            pincelCasilleroFecha.setMaskFilter(new BlurMaskFilter(2f, BlurMaskFilter.Blur.INNER));
-
-            //se utilizara para el marco de la bateria
-            pincelCasilleroBateria.setStrokeWidth(6f);
-            pincelCasilleroBateria.setAntiAlias(true);
-            pincelCasilleroBateria.setStyle(Paint.Style.STROKE);
-            pincelCasilleroBateria.setStrokeCap(Paint.Cap.ROUND);
-            pincelCasilleroBateria.setMaskFilter(new BlurMaskFilter(3f, BlurMaskFilter.Blur.SOLID));
-
-            //se utilizara para pintar el marco de la bateria
-            pincelMarcoBat.setStrokeWidth(2f);
-            pincelMarcoBat.setAntiAlias(true);
-            pincelMarcoBat.setColor(Color.WHITE);
-            pincelMarcoBat.setStyle(Paint.Style.STROKE);
-            pincelMarcoBat.setStrokeCap(Paint.Cap.ROUND);
-            pincelMarcoBat.setMaskFilter(new BlurMaskFilter(3f, BlurMaskFilter.Blur.NORMAL));
-
-            //se utilizara para pintar la fecha
-            pincelInfoBat.setColor(Color.WHITE);
-            pincelInfoBat.setAntiAlias(true);
-            pincelInfoBat.setMaskFilter(new BlurMaskFilter(2f, BlurMaskFilter.Blur.SOLID));
-            pincelInfoBat.setTextSize(13f);
-
-            //se utilizara para pintar los marcadores de las horas
-            pincelMarcadoresHoras.setStrokeWidth(3f);
-            pincelMarcadoresHoras.setAntiAlias(true);
-            pincelMarcadoresHoras.setColor(Color.WHITE);
-            pincelMarcadoresHoras.setStyle(Paint.Style.STROKE);
-            pincelMarcadoresHoras.setStrokeCap(Paint.Cap.ROUND);
-            pincelMarcadoresHoras.setMaskFilter(new BlurMaskFilter(2f, BlurMaskFilter.Blur.SOLID));
+            mFuenteTiempo.setZona(TimeZone.getDefault());
+
+            //los planificadores se crean aqui para que usen el hilo del motor
+            mDespertares = new PlanificadorDespertares(mReceptorDespertares);
+
+            mPlanificador = new PlanificadorFrames(mReceptorFrames);
+            mPlanificador.setModo(MODO_FRAMES_INTERACTIVO);
+            mGobernador = new GobernadorFrames(System.currentTimeMillis());
+
+            //registramos la bateria una sola vez, hasta el onDestroy. Nos da el primer estado
+            //al momento y con el el gobernador elige la politica de frames
+            mBateria = new ProveedorBateria(ServicioMain.this, mOyenteBateria);
+            mBateria.registrar();
 
+            //el tema elegido, las preferencias guardan al oyente con una referencia debil y
+            //por eso es un campo del motor
+            mPreferencias = ReceptorTemas.preferencias(ServicioMain.this);
+            mTema = ReceptorTemas.leer(mPreferencias);
+            mPreferencias.registerOnSharedPreferenceChangeListener(mOyenteTema);
         }
 
-        //variables que utilizaremos para pintar en el canvas
-
-        //los centros del canvas
-        float centerX;
-        float centerY;
-        //el tamaño del canvas
-        int width;
-        int height;
-        //este parametro se usa para determinar las direcciones del efecto
-        float pathEffectLen;
-        //este es el efecto en si
-        DashPathEffect dashPathEffect;
-        //variables auxiliares
-        float hrYAuxPrima;
-        float hrXAuxPrima;
-        float hrYAux;
-        float hrXAux;
-        float ahrsAux;
-        //longitud de las manecillas
-        float longHrs;
-        float longMin;
-        //los string que represntaran la fecha
-        String fechaBlanca;
-        String fechaCyan;
-        //tamaño del casillero que contendra la fecha
-        float casilleroWidth;
-        float casilleroHeigth;
-        //este es el casillero
-        RectF casillero;
-        //un degradado para el casillero
-        LinearGradient shader;
-        //los componentes de la bateria
-        RectF casilleroBateriaPadre;
-        RectF casilleroBateria;
-        //tamaños del texto de bateria
-        float htextoBat;
-        float wtextoBat;
-        //creamos el shader para aplicarselo
-        Shader shaderBat;
-        //angulo de inicio calculado que representa el nivel de bateria
-        float abat;
-        //angulo de final calculado que representa el nivel de bateria
-        float finBat;
-        //el offset para pintar la fecha cyan en X
-        float offsetXTextoFechaCyan;
-        //el offset para pintar la fecha blanca en X
-        float offsetXTextoFecha;
-        //el offset para pintar la fecha en Y
-        float offsetYTextoFecha;
-        //padding para el casillero de la fecha
-        float paddingFecha=3f;
-        //posiciones del texto fecha
-        float xTextoBat;
-        float yTextoBat;
+        //tamanio de la superficie que nos llega en el onSurfaceChanged, 0 hasta entonces
+        int mAnchoSuperficie;
+        int mAltoSuperficie;
+        //construye los recursos en el hilo de preparacion con las caches y la tabla de
+        //disposiciones del servicio
+        final PreparadorRecursos mPreparadorRecursos = new PreparadorRecursos(mCacheBitmaps,
+                mPoolRecursos, mCachePixeles, mTablaDisposiciones, mFicheroDisposiciones);
+        //forma e inset inferior de la pantalla, nos llegan en el onApplyWindowInsets
+        boolean mPantallaRedonda;
+        int mInsetInferior;
+        //momento de creacion del motor, 0 cuando ya se ha pintado el primer frame
+        long mInicioMotorNanos;
+        //tiempo de CPU del hilo al empezar el frame
+        long mCpuInicioFrame;
+        //tiempos de pintado para el dumpsys
+        final MetricasFrame mMetricas = new MetricasFrame();
+        //los repintados de una zona tras un toque van aparte, no son frames del motor
+        final MetricasFrame mMetricasZona = new MetricasFrame();
+        //lista de dibujo para no repintar frames iguales
+        final ListaDibujo mListaDibujo = new ListaDibujo();
+        //calcula cada frame (manecillas, arco, desplazamiento) y graba su lista de dibujo, la
+        //geometria se la damos con los recursos
+        final PreparadorFrame mPreparador = new PreparadorFrame(new Geometria(), mListaDibujo);
+        //true si el frame ya esta calculado y el onDraw solo tiene que pintarlo
+        boolean mFramePreparado = false;
+        //la grafica del historial de la bateria ya como segmentos para drawLines, se
+        //recalcula al cambiar el historial, los recursos o el punto de la vista
+        final float[] mLineasHistorial = new float[HistorialBateria.PUNTOS * 4];
+        int mLongitudLineas;
+        int mVersionHistorial = -1;
+        RecursosFrame mFrameHistorial;
+        long mHistorialHasta;
+        int mVistaHistorial = HistorialBateria.VISTA_DIA;
+        //formato de la fecha elegido con los toques
+        int mFormatoFecha = TextoFecha.FORMATO_DIA_MES;
+        //zona que se repinta tras un toque, reutilizables
+        final RectF mZonaToque = new RectF();
+        final Rect mSucio = new Rect();
+        //toques atendidos, para el dumpsys
+        int mToques;
 
         /*
         utilizamos este metodo para inicializar todos los componentes graficos para no hacerlo
         en el onDraw y no cargar el proceso dado que el onDraw se llama cada poco tiempo y
         es costoso en terminos de procesador tener que realizar todas las operaciones.
+        Ahora ni siquiera se hace aqui, se le pide al hilo de preparacion y mientras tanto se
+        siguen pintando los frames con los recursos anteriores.
          */
         @Override
         public void onSurfaceChanged(SurfaceHolder holder, int format, int widthA, int heightA) {
             super.onSurfaceChanged(holder, format, widthA, heightA);
+            mAnchoSuperficie = widthA;
+            mAltoSuperficie = heightA;
+            solicitarRecursos();
+        }
+
+        /**
+         * pide al hilo de preparacion unos recursos nuevos para la superficie, la hora y las
+         * propiedades actuales. Si ya habia una peticion sin empezar solo se hace la ultima
+         */
+        private void solicitarRecursos() {
+            if (mAnchoSuperficie == 0) {
+                //sin superficie no sabemos para que tamanio prepararlos
+                return;
+            }
+            mPeticion = new RecursosFrame.Peticion(mAnchoSuperficie, mAltoSuperficie,
+                    mPantallaRedonda, mInsetInferior, System.currentTimeMillis(),
+                    (TimeZone) mFuenteTiempo.getZona().clone(), mBajoBit, mProteccionQuemado,
+                    mTema);
+            mHiloPreparacion.encargar(mPreparar);
+        }
 
-            //tomamos la hora
-            mCalendar.setTimeInMillis(System.currentTimeMillis());
-
-            //tomamos las medidas del canvas
-            width = widthA;
-            height = heightA;
-
-            //tomamos el centro del canvas
-            centerX = width / 2f;
-            centerY = height / 2f;
-
-            //longitud manecillas
-            longMin = centerX - 40f;
-            longHrs = centerX - 80f;
-
-            //calculamos el angulo que tomaremos para cada segundo
-            pathEffectLen = (PI * width) / 60f;
-            //creamos los efectos para el casillero de los segundos
-            dashPathEffect = new DashPathEffect(
-                    new float[]{pathEffectLen - 6f, 4f},
-                    0f);
-            pincelAzulBlur.setPathEffect(dashPathEffect);
-
-            //obtenemos las longitudes del texto de la bateria
-            wtextoBat=pincelInfoBat.measureText(String.valueOf(level)+"%");
-            htextoBat=pincelInfoBat.ascent()+pincelCyanSolido.descent();
-
-            //dependiendo de la resolución de la pantalla pintaremos de una forma u otra ciertos
-            //elementos
-            if(heightA>=320f){
-
-                //tamanios de los textos
-                if(heightA==320f){
-                    pincelCyanSolido.setTextSize(13f);
-                    pincelBlancoSolido.setTextSize(13f);
+        /**
+         * construye unos recursos enteros en el hilo de preparacion y los deja listos para el
+         * siguiente frame del hilo principal
+         */
+        final Runnable mPreparar = new Runnable() {
+            @Override
+            public void run() {
+                long inicio = System.nanoTime();
+                RecursosFrame recursos = mPreparadorRecursos.preparar(mPeticion);
+                mHiloPreparacion.medir(System.nanoTime() - inicio);
+                if (mDestruido) {
+                    //el motor ya no va a pintar, los soltamos sin publicarlos
+                    recursos.liberar(mPoolRecursos);
+                    return;
                 }
-                else{
-                    pincelCyanSolido.setTextSize(15f);
-                    pincelBlancoSolido.setTextSize(15f);
+                //si el hilo principal no llego a tomar los anteriores ya no los va a usar
+                RecursosFrame anteriores = mListos.getAndSet(recursos);
+                if (anteriores != null) {
+                    anteriores.liberar(mPoolRecursos);
                 }
+                mHandlerPrincipal.post(mAvisoListos);
+            }
+        };
 
-                //vamos a pintar dos casilleros, uno de ellos para indicar el nivel de bateria
-                casilleroBateria=new RectF(
-                        (centerX/2)-30,
-                        centerY-60,
-                        (centerX/2)+30,
-                        centerY
-                );
-
-                //el otro es un marco
-                casilleroBateriaPadre=new RectF(
-                        (centerX/2)-40,
-                        centerY-70,
-                        (centerX/2)+40,
-                        centerY+10
-                );
-
-                //posiciones del texto de la bateria
-                xTextoBat=(centerX/2)-(wtextoBat/2);
-                yTextoBat=(centerY-30)-(htextoBat/2);
-
-                //construimos la fecha, en dispositivos grandes tendra el anio
-                fechaBlanca = mCalendar.getDisplayName(Calendar.DAY_OF_WEEK, Calendar.SHORT, Locale.ENGLISH)
-                        + " " +
-                        String.valueOf(Calendar.DAY_OF_MONTH)
-                        + " ";
-                fechaCyan = mCalendar.getDisplayName(Calendar.MONTH, Calendar.SHORT, Locale.ENGLISH)
-                        + " " +
-                        String.valueOf(mCalendar.get(Calendar.YEAR));
-            }
-            else{
-                //tamanio de los textos en pequenio
-                pincelCyanSolido.setTextSize(12f);
-                pincelBlancoSolido.setTextSize(12f);
-
-                //vamos a pintar dos casilleros, uno de ellos para indicar el nivel de bateria
-                casilleroBateria=new RectF(
-                        (centerX/2)-20,
-                        centerY-40,
-                        (centerX/2)+20,
-                        centerY
-                );
-
-                //el otro es un marco
-                casilleroBateriaPadre=new RectF(
-                        (centerX/2)-30,
-                        centerY-50,
-                        (centerX/2)+30,
-                        centerY+10
-                );
-
-                //posiciones del texto de la bateria
-                xTextoBat=(centerX/2)-(wtextoBat/2);
-                yTextoBat=(centerY-20)-(htextoBat/2);
-
-                //construimos la fecha, en dispositivos pequenios NO tendra el anio
-                fechaBlanca = mCalendar.getDisplayName(Calendar.DAY_OF_WEEK, Calendar.SHORT, Locale.ENGLISH)
-                        + " " +
-                        String.valueOf(Calendar.DAY_OF_MONTH)
-                        + " ";
-                fechaCyan = mCalendar.getDisplayName(Calendar.MONTH, Calendar.SHORT, Locale.ENGLISH);
-            }
-
-            //creamos el shader que sera un gradiente para el casillero de la fecha
-            shaderBat = new LinearGradient(
-                    casilleroBateria.left-20,
-                    casilleroBateria.top,
-                    casilleroBateria.right-5,
-                    casilleroBateria.top-20,
-                    Color.GREEN,Color.RED, Shader.TileMode.CLAMP);
-            pincelCasilleroBateria.setShader(shaderBat);
-
-            //damos valor inicial al arco de la bateria
-            abat = level / 100f * TWO_PI;
-            finBat = (180 * abat) / PI;
-
-            //calculamos los offsets de la fecha que esta dividida en dos para poder pintarlas en
-            //dos colores, cyan y blanco
-            offsetXTextoFecha = centerX + centerX/4;
-            offsetYTextoFecha = centerY - centerY/6;
-            offsetXTextoFechaCyan = offsetXTextoFecha + pincelBlancoSolido.measureText(fechaBlanca);
-
-            //tomamos las medidas ya con las dos fechas juntas y poder saber cuanto ocupan
-            casilleroWidth = pincelBlancoSolido.measureText(fechaBlanca)+
-                    pincelCyanSolido.measureText(fechaCyan);
-            casilleroHeigth = pincelBlancoSolido.ascent()-pincelBlancoSolido.descent();
-
-            //calculamos el casillero que va a contener a la fecha
-            casillero=new RectF(
-                    offsetXTextoFecha - paddingFecha,
-                    offsetYTextoFecha + paddingFecha,
-                    offsetXTextoFecha + casilleroWidth + paddingFecha,
-                    offsetYTextoFecha + casilleroHeigth + paddingFecha
-            );
-
-            //creamos el shader para aplicarselo en este caso un gradiente lineal
-            shader = new LinearGradient(casillero.left,casillero.top,
-                    casillero.right,casillero.bottom,
-                    Color.CYAN,Color.WHITE, Shader.TileMode.MIRROR);
-
-            //seteamos el shader al piincel
-            pincelCasilleroFecha.setShader(shader);
+        /**
+         * en el hilo principal, con los recursos nuevos listos forzamos un frame entero
+         */
+        final Runnable mAvisoListos = new Runnable() {
+            @Override
+            public void run() {
+                if (mDestruido) {
+                    return;
+                }
+                mListaDibujo.invalidar();
+                mDespertares.solicitar(PlanificadorDespertares.MOTIVO_RECURSOS, 0);
+            }
+        };
 
+        /**
+         * en el hilo principal cambia los recursos por los ultimos preparados, si los hay. Los
+         * anteriores se sueltan en el hilo de preparacion, aqui ya no se van a pintar
+         */
+        private void tomarRecursosListos() {
+            RecursosFrame listos = mListos.getAndSet(null);
+            if (listos == null) {
+                return;
+            }
+            final RecursosFrame anteriores = mFrame;
+            mFrame = listos;
+            mReparacionPedida = false;
+
+            //las manecillas se calculan con la geometria de la pantalla nueva
+            mPreparador.setGeometria(listos.geometria);
+            //la fecha nueva con el formato que se ha elegido con los toques
+            listos.textoFecha.setFormato(mFormatoFecha);
+            //el siguiente frame hay que pintarlo entero
+            mListaDibujo.invalidar();
+
+            if (anteriores != null) {
+                mHiloPreparacion.encargar(new Runnable() {
+                    @Override
+                    public void run() {
+                        anteriores.liberar(mPoolRecursos);
+                    }
+                });
+            }
         }
 
         /**
@@ -464,133 +584,283 @@ public class ServicioMain extends CanvasWatchFaceService {
          */
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            //pintamos el fondo, en este caso es el color negro sin imagen
-            canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-
-            // Actualizamos el tiempo
-            mCalendar.setTimeInMillis(System.currentTimeMillis());
-
-            // Calculos de los angulos en radianes para mover los segundos, minutos y horas.
-
-            //segundos
-            float seconds = mCalendar.get(Calendar.SECOND) +
-                    mCalendar.get(Calendar.MILLISECOND) / 1000f;
-            //angulo de la porcion de cada segudno
-            float asec = seconds / 60f * TWO_PI;
-
-            //minutos
-            float minutes = mCalendar.get(Calendar.MINUTE) + seconds / 60f;
-            //angulo de la porcion de cada minuto
-            float amin = minutes / 60f * TWO_PI;
-
-            //horas
-            float hours = mCalendar.get(Calendar.HOUR) + minutes / 60f;
-            //angulo de la porcion de cada minuto
-            float ahrs = hours / 12f * TWO_PI;
-
-            // solo pintaremos cierta informacion si estamos en modo interactivo
-            // para respetar al maximo la bateria
-            if (!isInAmbientMode()) {
-
-                for (int i = 1; i <= 12; i++) {
-                    //pintamos los iindicadores de la hora, pero no aconsejo pintar esto aqui,
-                    //si no poner un fondo con las marcas de las horas ya pintadas en el
-                    //ya que así no cargamos el proceso de pintado con bucles
-
-                    ahrsAux = i / 12f * TWO_PI;
-                    hrXAux = (float) Math.sin(ahrsAux) * (width-centerX-15f);
-                    hrYAux = (float) -Math.cos(ahrsAux) * (height-centerY-15f);
-                    hrXAuxPrima = (float) Math.sin(ahrsAux) * (width-centerX-25f);
-                    hrYAuxPrima = (float) -Math.cos(ahrsAux) * (height-centerY-25f);
-
-                    canvas.drawLine(
-                            centerX + hrXAux,
-                            centerY + hrYAux,
-                            centerX + hrXAuxPrima,
-                            centerY + hrYAuxPrima,
-                            pincelMarcadoresHoras
-                    );
-                }
+            //empezamos a medir el frame, tambien el tiempo de CPU para el gobernador
+            mMetricas.empezarFrame(System.nanoTime());
+            mCpuInicioFrame = Debug.threadCpuTimeNanos();
+            //los bitmaps que se pinten a partir de aqui son los mas recientes de la cache
+            mCacheBitmaps.nuevoFrame();
+
+            //si el frame no lo ha preparado ya quien ha pedido el repintado lo preparamos ahora,
+            //aunque sea igual al anterior hay que pintarlo entero
+            if (!mFramePreparado) {
+                mListaDibujo.invalidar();
+                prepararFrame(System.currentTimeMillis());
+            }
+            mFramePreparado = false;
 
-                //preparamos to_do lo necesario para para pintar los segundos
-                final RectF ovalSec = new RectF();
-                //calculamos el angulo de fin del arco
-                float finSec = (180f * asec) / PI;
-                //longitud del cuadrado que represntara cada segundo
-                float longSegundos=20f;
-                //le damos medidas a la base del arco
-                ovalSec.set(
-                        bounds.left + longSegundos,
-                        bounds.top + longSegundos,
-                        bounds.right - longSegundos,
-                        bounds.bottom - longSegundos
-                );
-                //pintamos el arco desde -90 que es desde las 12 en punto, no pintamos centro
-                canvas.drawArc(ovalSec, -90f, finSec, false, pincelAzulBlur);
-
-                //pintamos los dos trozos de la fecha por separado para poder cambiar su color
-                canvas.drawText(fechaBlanca, offsetXTextoFecha,
-                        offsetYTextoFecha, pincelBlancoSolido);
-                //uno blanco y otro cyan
-                canvas.drawText(fechaCyan, offsetXTextoFechaCyan,
-                        offsetYTextoFecha, pincelCyanSolido);
-
-                //pintamos el casillero de la fecha
-                canvas.drawRect(casillero, pincelCasilleroFecha);
-
-                //tomamos los angulos de la bateria
-                abat = level / 100f * TWO_PI;
-                finBat = (180f * abat) / PI;
-
-                //pintamos el marco de la bateria
-                canvas.drawArc(casilleroBateriaPadre,
-                        0f, 360f,
-                        false,
-                        pincelMarcoBat
-                );
-
-                if (level!=-1){
-                    //si hemos obtenido lectura de la bateria la mostraremos
-                    //pintamos el nivel bateria en forma de arco
-                    canvas.drawArc(casilleroBateria,
-                            -90f,finBat,
-                            false,
-                            pincelCasilleroBateria
-                    );
-                    //pintamos el texto dentro del arco
-                    canvas.drawText(String.valueOf(level)+"%",xTextoBat,yTextoBat, pincelInfoBat);
+            dibujarFrame(canvas, mMetricas);
 
-                }
-                else{
-                    //si no pintaremos solo el texto
-                    canvas.drawText("0%",xTextoBat,yTextoBat, pincelInfoBat);
-                }
+            //acabamos de medir el frame
+            terminarMedida(System.nanoTime());
+        }
+
+        /**
+         * pinta el frame ya preparado, lo usan el onDraw y el repintado de una zona. Las fases
+         * se apuntan en las metricas que nos pasan, empezar y cerrar el frame es cosa de quien
+         * llama
+         */
+        private void dibujarFrame(Canvas canvas, MetricasFrame metricas) {
+            RecursosFrame frame = mFrame;
+            if (frame == null) {
+                //los primeros recursos aun se estan preparando, de momento solo el fondo
+                canvas.drawColor(Color.BLACK);
+                return;
+            }
+            //si la cache de bitmaps ha soltado algo por falta de memoria pedimos unos recursos
+            //nuevos, mientras llegan se pinta lo que quede
+            if (!mReparacionPedida && !frame.completo(isInAmbientMode())) {
+                mReparacionPedida = true;
+                solicitarRecursos();
+            }
+            //el modo ambiente va por su propio camino, solo fondo y manecillas sin brillo
+            //colocadas en el minuto, desplazadas si la pantalla lo necesita
+            if (isInAmbientMode()) {
+                frame.dibujarAmbiente(canvas, mPreparador);
+            } else {
+                //el frame interactivo, sin segundos ni brillo en ahorro de bateria
+                frame.dibujar(canvas, mPreparador, level, mGobernador.conSegundos(),
+                        mGobernador.conBrillo(), mLineasHistorial, mLongitudLineas, metricas);
+            }
+            metricas.marcarFase(MetricasFrame.FASE_MANECILLAS, System.nanoTime());
+        }
+
+        /**
+         * cierra la medida del frame y, si es el primero del motor, apunta el arranque
+         */
+        private void terminarMedida(long fin) {
+            mMetricas.terminarFrame(fin, plazoFrameNanos());
+            mGobernador.registrarFrame(Debug.threadCpuTimeNanos() - mCpuInicioFrame);
+            if (mInicioMotorNanos != 0) {
+                mMetricas.registrarArranque(fin - mInicioMotorNanos);
+                mInicioMotorNanos = 0;
+            }
+        }
+
+
+        /**
+         * Calcula todo lo que cambia en el frame (tiempo, extremos de las manecillas, arco de los
+         * segundos) y graba la lista de dibujo para compararla con la del frame anterior.
+         * @param ahora la hora del frame en milisegundos
+         * @return true si lo que se veria en pantalla es distinto del frame anterior
+         */
+        private boolean prepararFrame(long ahora) {
+            //si el hilo de preparacion ha terminado unos recursos nuevos los usamos desde ya
+            tomarRecursosListos();
+            //hasta que lleguen los primeros no hay nada que preparar
+            if (mFrame == null) {
+                return false;
+            }
+            // Actualizamos el tiempo, la fuente lo descompone sin Calendar
+            mFuenteTiempo.actualizar(ahora);
+            //si ha cambiado el dia local pedimos la fecha y la capa estatica del dia nuevo, y
+            //hasta que lleguen seguimos con las de ayer
+            if (mFuenteTiempo.dia != mFrame.diaLocal && mFuenteTiempo.dia != mDiaPedido) {
+                mDiaPedido = mFuenteTiempo.dia;
+                solicitarRecursos();
+            }
+
+            //tomamos el nivel de bateria de una sola vez para todo el frame
+            level = ProveedorBateria.nivel(mBateria.getEstado());
+
+            //las manecillas, el arco y la lista de dibujo los calcula el preparador de face-core,
+            //si es igual no lo damos por preparado para que un repintado posterior del sistema
+            //vuelva a calcularlo con la hora de ese momento
+            mFramePreparado = mPreparador.preparar(mFuenteTiempo, ahora, isInAmbientMode(),
+                    mFrame.dia, level, mFrame.disposicion);
+            //la grafica del historial no va en la lista de dibujo, si cambia tambien hay que
+            //pintar el frame
+            if (prepararHistorial(ahora)) {
+                mFramePreparado = true;
+            }
+            return mFramePreparado;
+        }
 
+        /**
+         * recalcula la grafica del historial si ha cambiado algo desde la ultima vez, el onDraw
+         * solo la pinta
+         * @return true si ha cambiado
+         */
+        private boolean prepararHistorial(long ahora) {
+            int version = mHistorial.getVersion();
+            if (version == mVersionHistorial && mFrame == mFrameHistorial
+                    && ahora < mHistorialHasta) {
+                return false;
+            }
+            mVersionHistorial = version;
+            mFrameHistorial = mFrame;
+            long paso = HistorialBateria.paso(mVistaHistorial);
+            mHistorialHasta = (ahora / paso + 1) * paso;
+            float[] r = mFrame.disposicion.historialBateria;
+            mLongitudLineas = mHistorial.lineas(mVistaHistorial, ahora, r[0], r[1], r[2], r[3],
+                    mLineasHistorial);
+            return true;
+        }
 
+        /**
+         * prepara el frame y solo invalida el canvas si algo visible ha cambiado
+         */
+        private void repintarSiCambia() {
+            if (prepararFrame(System.currentTimeMillis())) {
+                invalidate();
             }
+        }
 
-            // Pintamos las manecillas de las horas y los minutos.
-            float minX = (float) Math.sin(amin) * longMin;
-            float minY = (float) -Math.cos(amin) * longMin;
-            canvas.drawLine(centerX, centerY, centerX + minX, centerY + minY,
-                    mMinutePaint);
-            float hrX = (float) Math.sin(ahrs) * longHrs;
-            float hrY = (float) -Math.cos(ahrs) * longHrs;
-            canvas.drawLine(centerX, centerY, centerX + hrX, centerY + hrY,
-                    mHourPaint);
+        /**
+         * lo que puede tardar un frame antes de que toque el siguiente segun el modo actual
+         */
+        private long plazoFrameNanos() {
+            //en ambiente y en ahorro se pinta una vez por minuto
+            if (!mGobernador.conSegundos()) {
+                return TimeUnit.MINUTES.toNanos(1);
+            }
+            if (mPlanificador.esFluido()) {
+                return mPlanificador.getIntervaloNanos();
+            }
+            return TimeUnit.MILLISECONDS.toNanos(INTERACTIVE_UPDATE);
         }
 
+        /**
+         * volcamos las metricas de pintado en el dumpsys del servicio, con el argumento
+         * "reset" ademas las borramos despues de volcarlas
+         */
+        @Override
+        protected void dump(String prefix, FileDescriptor fd, PrintWriter out, String[] args) {
+            super.dump(prefix, fd, out, args);
+            out.print(prefix);
+            out.println("SimpleInfoFace ambiente=" + isInAmbientMode()
+                    + " fps=" + mPlanificador.getModo());
+            mMetricas.volcar(prefix + "  ", out);
+            out.print(prefix + "  ");
+            out.println("repintados de zona:");
+            mMetricasZona.volcar(prefix + "    ", out);
+            mCacheBitmaps.volcar(prefix + "  ", out);
+            mGobernador.volcar(prefix + "  ", out, System.currentTimeMillis());
+            mListaDibujo.volcar(prefix + "  ", out, System.currentTimeMillis());
+            mDespertares.volcar(prefix + "  ", out, System.currentTimeMillis());
+            out.print(prefix + "  ");
+            out.println("disposiciones aciertos=" + mTablaDisposiciones.getAciertos()
+                    + " fallos=" + mTablaDisposiciones.getFallos());
+            out.print(prefix + "  ");
+            out.println("cachePixeles aciertos=" + mCachePixeles.getAciertos()
+                    + " fallos=" + mCachePixeles.getFallos());
+            mPoolRecursos.volcar(prefix + "  ", out);
+            mHiloPreparacion.volcar(prefix + "  ", out);
+            mHistorial.volcar(prefix + "  ", out);
+            out.print(prefix + "  ");
+            out.println("toques=" + mToques + " vistaHistorial=" + mVistaHistorial
+                    + " formatoFecha=" + mFormatoFecha);
+            if (args != null) {
+                for (String arg : args) {
+                    if ("reset".equals(arg)) {
+                        mMetricas.reiniciar();
+                        mMetricasZona.reiniciar();
+                        mCacheBitmaps.reiniciar();
+                        mGobernador.reiniciar(System.currentTimeMillis());
+                        mListaDibujo.reiniciar(System.currentTimeMillis());
+                        mDespertares.reiniciar(System.currentTimeMillis());
+                    }
+                }
+            }
+        }
 
+        /**
+         * un toque en la caratula, buscamos en el indice de zonas de los recursos actuales que
+         * se ha tocado. Solo se recalcula lo de esa zona y solo se repinta su rectangulo
+         */
+        @Override
+        public void onTapCommand(int tapType, int x, int y, long eventTime) {
+            RecursosFrame frame = mFrame;
+            if (tapType != TAP_TYPE_TAP || frame == null || isInAmbientMode()) {
+                return;
+            }
+            switch (frame.toques.buscar(x, y)) {
+                case RecursosFrame.ZONA_BATERIA:
+                    //pasamos a la siguiente vista del historial y recalculamos la grafica
+                    mVistaHistorial = (mVistaHistorial + 1) % HistorialBateria.VISTAS;
+                    mVersionHistorial = -1;
+                    prepararHistorial(System.currentTimeMillis());
+                    mZonaToque.set(frame.casilleroBateriaPadre);
+                    break;
+                case RecursosFrame.ZONA_FECHA:
+                    //las posiciones de los dos formatos ya estan calculadas
+                    mFormatoFecha = (mFormatoFecha + 1) % TextoFecha.FORMATOS;
+                    frame.textoFecha.setFormato(mFormatoFecha);
+                    mZonaToque.set(frame.textoFecha.casillero);
+                    break;
+                default:
+                    return;
+            }
+            mToques++;
+            repintarZona(mZonaToque);
+        }
+
+        /**
+         * repinta solo un rectangulo encima de lo que ya hay en pantalla. La superficie copia
+         * lo que queda fuera del buffer anterior, asi que basta con pintar el frame recortado a
+         * la zona con lo ya preparado, igual que lo que se esta viendo. Si no podemos tomar el
+         * canvas se repinta entero como siempre. No pasa por el onDraw: no es un frame del
+         * motor y no cuenta para las metricas de frames, el primer frame ni el gobernador, se
+         * mide en sus propias metricas
+         */
+        private void repintarZona(RectF zona) {
+            zona.sort();
+            zona.roundOut(mSucio);
+            mSucio.inset(-MARGEN_ZONA, -MARGEN_ZONA);
+            SurfaceHolder holder = getSurfaceHolder();
+            Canvas canvas = holder.lockCanvas(mSucio);
+            if (canvas == null) {
+                invalidate();
+                return;
+            }
+            try {
+                //lockCanvas puede haber agrandado la zona, la deja en mSucio
+                canvas.clipRect(mSucio);
+                mMetricasZona.empezarFrame(System.nanoTime());
+                dibujarFrame(canvas, mMetricasZona);
+                mMetricasZona.terminarFrame(System.nanoTime(), MetricasFrame.PLAZO_VSYNC_NANOS);
+            } finally {
+                holder.unlockCanvasAndPost(canvas);
+            }
+        }
 
         @Override
         public void onDestroy() {
-            //deshabilitamos el handler para que deje de actualizar
-            mUpdateTimeHandler.get().removeMessages(MSG_UPDATE_TIME);
-            if(esRegistradoBat) {
-                //desregistramos el receiver de la bateria
-                ServicioMain.this.unregisterReceiver(mBatteryReceiver);
-                esRegistradoBat = false;
-            }
+            //quitamos todo lo programado para que deje de actualizar
+            mDespertares.parar();
+            mPlanificador.parar();
+            //lo que este preparando el hilo ya no se publica, y lo que tengamos lo soltamos alli
+            //despues de lo que tenga encargado. Si era el ultimo motor se liberan los recursos
+            //compartidos
+            mDestruido = true;
+            mHiloPreparacion.cancelar(mPreparar);
+            mHandlerPrincipal.removeCallbacks(mAvisoListos);
+            final RecursosFrame actuales = mFrame;
+            mFrame = null;
+            mHiloPreparacion.encargar(new Runnable() {
+                @Override
+                public void run() {
+                    if (actuales != null) {
+                        actuales.liberar(mPoolRecursos);
+                    }
+                    RecursosFrame listos = mListos.getAndSet(null);
+                    if (listos != null) {
+                        listos.liberar(mPoolRecursos);
+                    }
+                }
+            });
+            //desregistramos el receiver de la bateria y dejamos de escuchar el tema
+            mBateria.desregistrar();
+            mPreferencias.unregisterOnSharedPreferenceChangeListener(mOyenteTema);
             super.onDestroy();
         }
 
@@ -605,23 +875,13 @@ public class ServicioMain extends CanvasWatchFaceService {
             //Si es visible
             if (visible) {
                 registerReceiver();
-                // Actualizamos el tiempo
-                mCalendar.setTimeInMillis(System.currentTimeMillis());
-                if(!esRegistradoBat) {
-                    //registramos el broadcast de la bateria
-                    IntentFilter filterCambioDeBateria = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-                    ServicioMain.this.registerReceiver(mBatteryReceiver, filterCambioDeBateria);
-                    esRegistradoBat = true;
-                }
-
             } else {
-                //si no desregistramos todos los broadcast
+                //si no desregistramos el broadcast de la zona horaria, el de la bateria sigue
+                //registrado para no perder lecturas
                 unregisterReceiver();
-                if(esRegistradoBat) {
-                    ServicioMain.this.unregisterReceiver(mBatteryReceiver);
-                    esRegistradoBat = false;
-                }
             }
+            //al volver a ser visibles el primer frame se pinta siempre
+            mListaDibujo.invalidar();
             //controlamos la actualizacion de los segundos
             updateTimer();
         }
@@ -658,21 +918,46 @@ public class ServicioMain extends CanvasWatchFaceService {
             //dependiendo de si es redondo o cuadrado
             //en este caso nosotros nos hemos centrado en las resoluciones
             //y pintar igual todos los relojes indiferentemente de si es
-            //cuadrado o no
+            //cuadrado o no, solo los guardamos como parte de la clave de la disposicion
+            boolean redonda = insets.isRound();
+            int insetInferior = insets.getSystemWindowInsetBottom();
+            if (redonda == mPantallaRedonda && insetInferior == mInsetInferior) {
+                return;
+            }
+            mPantallaRedonda = redonda;
+            mInsetInferior = insetInferior;
+            //si la superficie llego antes que los insets los recursos se prepararon con la
+            //forma que no era, los pedimos otra vez con la buena
+            solicitarRecursos();
+        }
 
+        /**
+         * el sistema nos dice como es la pantalla en modo ambiente
+         * @param properties
+         */
+        @Override
+        public void onPropertiesChanged(Bundle properties) {
+            super.onPropertiesChanged(properties);
+            mBajoBit = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mProteccionQuemado = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
+            mPreparador.setProteccionQuemado(mProteccionQuemado);
+            //las manecillas de ambiente se pintan de nuevo con las propiedades en el hilo de
+            //preparacion
+            solicitarRecursos();
+            mListaDibujo.invalidar();
+            mDespertares.solicitar(PlanificadorDespertares.MOTIVO_PROPIEDADES, 0);
         }
 
-        //metodo que se repite cada segundo
+        //metodo que se repite cada minuto, en modo ambiente es el unico que repinta
         @Override
         public void onTimeTick() {
             super.onTimeTick();
-            //repintamos cada segundo
-            invalidate();
+            //en ambiente el sistema ya nos ha despertado y repintamos al momento, en modo
+            //interactivo se junta con el tick de los segundos
+            mDespertares.solicitar(PlanificadorDespertares.MOTIVO_MINUTO,
+                    isInAmbientMode() ? 0 : PlanificadorDespertares.ALINEACION_MS);
         }
 
-        //control del broadcast de la bateria
-        boolean esRegistradoBat=false;
-
         /**
          * este metodo es llamado cuando pasamos entre el modo ambiente o el interactivo
          * @param inAmbientMode
@@ -682,34 +967,14 @@ public class ServicioMain extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             //tomamos el valor para saber si estamos en modo ambiente
             mAmbient = inAmbientMode;
-            //si es ambient quitaremos el color cyan y lo cambiamos por gris y el
-            //antialias como sugiere google
-            if (mAmbient) {
-
-                if(esRegistradoBat) {
-                    //desregistramos el broadcast  si procede ya que la bateria no se muestra en
-                    //modo ambiente
-                    ServicioMain.this.unregisterReceiver(mBatteryReceiver);
-                    esRegistradoBat = false;
-                }
-                mHourPaint.setColor(Color.DKGRAY);
-                mHourPaint.setAntiAlias(false);
-                mMinutePaint.setAntiAlias(false);
-            }
-            else{
-                //si es modo interactivo damos de nuevo el antialias y el color a la manecilla
-                if(!esRegistradoBat) {
-                    //registramos el broadcast de la bateria
-                    IntentFilter filterCambioDeBateria = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-                    ServicioMain.this.registerReceiver(mBatteryReceiver, filterCambioDeBateria);
-                    esRegistradoBat = true;
-                }
-                mHourPaint.setColor(Color.CYAN);
-                mHourPaint.setAntiAlias(true);
-                mMinutePaint.setAntiAlias(true);
-            }
+            mCacheBitmaps.setAmbiente(inAmbientMode);
+            //ambiente tiene su propia politica de frames
+            aplicarPolitica();
+            //cada modo tiene su pintado y sus manecillas ya preparadas, no hay que tocar
+            //ningun pincel, solo forzar el primer frame del modo nuevo
+            mListaDibujo.invalidar();
             //repintamos
-            invalidate();
+            mDespertares.solicitar(PlanificadorDespertares.MOTIVO_MODO, 0);
             //comprobamos si debemos seguir actualizando los segundos
             updateTimer();
         }
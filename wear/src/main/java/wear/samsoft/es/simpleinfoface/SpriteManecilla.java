@@ -0,0 +1,182 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+
+/**
+ * Manecilla pintada una sola vez en un bitmap con su pincel de brillo (BlurMaskFilter). En
+ * cada frame solo hay que colocarla con una matriz de rotacion en vez de hacer el desenfoque
+ * de la linea entera.
+ *
+ * El bitmap tiene la manecilla vertical apuntando hacia arriba, con el pivote en el centro de
+ * su extremo inferior. Se puede guardar y leer de la CachePixeles para no volver a pintarla
+ * despues de que maten el proceso. El bitmap es una entrada de la CacheBitmaps.
+ *
+ * Se pinta en el hilo de preparacion y se pinta en pantalla desde el principal, por eso la
+ * entrada solo se cambia cuando el bitmap ya esta pintado entero.
+ */
+class SpriteManecilla {
+
+    private final CacheBitmaps mCache;
+    private volatile CacheBitmaps.Entrada mEntrada;
+    //punto del bitmap que tiene que coincidir con el centro del reloj
+    private float mPivoteX;
+    private float mPivoteY;
+    //matriz reutilizable para colocar el sprite
+    private final Matrix mMatriz = new Matrix();
+
+    //con lo que se pinto por ultima vez, para saber si hay que repetirlo
+    private float mLongitud = -1f;
+    private boolean mAmbiente;
+
+    SpriteManecilla(CacheBitmaps cache) {
+        mCache = cache;
+    }
+
+    /**
+     * nos dice si el sprite no sirve para la longitud o el modo actual
+     */
+    boolean necesitaReconstruir(float longitud, boolean ambiente) {
+        return !CacheBitmaps.vigente(mEntrada) || mLongitud != longitud
+                || mAmbiente != ambiente;
+    }
+
+    /**
+     * pinta la manecilla en el bitmap
+     * @param longitud longitud de la manecilla
+     * @param ambiente el modo para el que se pinta
+     * @param pincel el pincel de la manecilla, con su grosor y brillo
+     * @param radioBrillo radio del BlurMaskFilter del pincel, para dejar sitio al brillo
+     */
+    void construir(float longitud, boolean ambiente, Paint pincel, float radioBrillo) {
+        float margen = margen(pincel, radioBrillo);
+        int w = ancho(margen);
+        int h = alto(longitud, margen);
+
+        CacheBitmaps.Entrada entrada = tomarEntrada(w, h, ambiente);
+        Bitmap bitmap = mCache.usar(entrada);
+        if (entrada == mEntrada) {
+            bitmap.eraseColor(0);
+        }
+        float pivoteX = w / 2f;
+        float pivoteY = h - margen;
+
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawLine(pivoteX, pivoteY, pivoteX, pivoteY - longitud, pincel);
+
+        publicar(entrada, pivoteX, pivoteY, longitud, ambiente);
+    }
+
+    /**
+     * intenta tomar el sprite ya pintado de la cache de disco, con los mismos parametros que
+     * construir
+     * @param huella huella del pincel y la longitud con los que se pinto
+     * @return true si estaba en la cache
+     */
+    boolean cargar(CachePixeles cache, String nombre, long huella,
+                   float longitud, boolean ambiente, Paint pincel, float radioBrillo) {
+        float margen = margen(pincel, radioBrillo);
+        int w = ancho(margen);
+        int h = alto(longitud, margen);
+        //el bitmap de la entrada es mutable y del mismo tamanio, la cache de disco lo rellena
+        CacheBitmaps.Entrada entrada = tomarEntrada(w, h, ambiente);
+        if (cache.cargar(nombre, w, h, ambiente ? 1 : 0, huella,
+                mCache.usar(entrada)) == null) {
+            //la devolvemos para que construir la vuelva a tomar
+            if (entrada != mEntrada) {
+                mCache.soltar(entrada);
+            }
+            return false;
+        }
+        publicar(entrada, w / 2f, h - margen, longitud, ambiente);
+        return true;
+    }
+
+    /**
+     * guarda el sprite recien pintado en la cache de disco
+     */
+    void guardar(CachePixeles cache, String nombre, long huella) {
+        Bitmap bitmap = mCache.usar(mEntrada);
+        if (bitmap != null) {
+            cache.guardar(nombre, bitmap, mAmbiente ? 1 : 0, huella);
+        }
+    }
+
+    private CacheBitmaps.Entrada tomarEntrada(int w, int h, boolean ambiente) {
+        return mCache.asegurar(mEntrada, w, h,
+                ambiente ? CacheBitmaps.USO_AMBIENTE : CacheBitmaps.USO_INTERACTIVO);
+    }
+
+    //la entrada se cambia la ultima, con el bitmap ya pintado
+    private void publicar(CacheBitmaps.Entrada entrada, float pivoteX, float pivoteY,
+                          float longitud, boolean ambiente) {
+        mPivoteX = pivoteX;
+        mPivoteY = pivoteY;
+        mLongitud = longitud;
+        mAmbiente = ambiente;
+        mEntrada = entrada;
+    }
+
+    //dejamos margen para el grosor, la punta redonda y el brillo
+    private static float margen(Paint pincel, float radioBrillo) {
+        return pincel.getStrokeWidth() / 2f + radioBrillo + 2f;
+    }
+
+    private static int ancho(float margen) {
+        return (int) Math.ceil(margen * 2f);
+    }
+
+    private static int alto(float longitud, float margen) {
+        return (int) Math.ceil(longitud + margen * 2f);
+    }
+
+    /**
+     * coloca la manecilla en el canvas
+     * @param centroX centro del reloj en X
+     * @param centroY centro del reloj en Y
+     * @param grados angulo desde las 12 en el sentido de las agujas del reloj
+     * @param pincel pincel para el bitmap, con o sin filtrado
+     */
+    void dibujar(Canvas canvas, float centroX, float centroY, float grados, Paint pincel) {
+        Bitmap bitmap = mCache.usar(mEntrada);
+        if (bitmap == null) {
+            return;
+        }
+        mMatriz.setTranslate(centroX - mPivoteX, centroY - mPivoteY);
+        mMatriz.postRotate(grados, centroX, centroY);
+        canvas.drawBitmap(bitmap, mMatriz, pincel);
+    }
+
+    /**
+     * obliga a pintar de nuevo el sprite, por ejemplo si han cambiado los pinceles
+     */
+    void invalidar() {
+        mLongitud = -1f;
+    }
+
+    /**
+     * devolvemos el bitmap a la cache cuando el motor se destruye
+     */
+    void liberar() {
+        mCache.soltar(mEntrada);
+        mEntrada = null;
+        mLongitud = -1f;
+    }
+}
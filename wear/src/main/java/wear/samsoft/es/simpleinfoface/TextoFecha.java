@@ -0,0 +1,198 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface;
+
+import android.graphics.Canvas;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.Shader;
+
+import java.util.Calendar;
+import java.util.Locale;
+
+import wear.samsoft.es.simpleinfoface.core.Disposicion;
+import wear.samsoft.es.simpleinfoface.core.Tema;
+
+/**
+ * Texto de la fecha ya formateado y medido, junto con su casillero y el degradado del
+ * casillero. Solo se vuelve a calcular cuando cambia el dia o la zona horaria, en el resto de
+ * frames no se formatea ni se mide ningun texto.
+ *
+ * La fecha va en dos trozos para poder pintarla en dos colores, "Sat 17 " en blanco y
+ * "Oct 2015" en cyan (sin el anio en las pantallas pequenias). Cada palabra se pinta desde el
+ * atlas de glifos, aqui guardamos que entrada le toca y donde va.
+ *
+ * Con un toque se cambia el orden del dia y el mes. Las palabras son las mismas y el casillero
+ * no cambia, asi que las posiciones de los dos formatos se calculan a la vez y cambiar de
+ * formato no mide nada ni toca la capa estatica.
+ */
+class TextoFecha {
+
+    //formatos de la fecha
+    static final int FORMATO_DIA_MES = 0;//"Sat 17 Oct 2015"
+    static final int FORMATO_MES_DIA = 1;//"Sat Oct 17 2015"
+    static final int FORMATOS = 2;
+
+    //los trozos de la fecha
+    String blanca;
+    String cyan;
+
+    //posiciones de cada trozo
+    float xBlanca;
+    float xCyan;
+    float y;
+
+    //entradas del atlas de cada palabra y su posicion en X en cada formato, el dia de la
+    //semana siempre va el primero en xBlanca
+    int entradaDiaSemana;
+    int entradaDiaMes;
+    int entradaMes;
+    final float[] xDiaMes = new float[FORMATOS];
+    final float[] xMes = new float[FORMATOS];
+    final float[] xAnio = new float[FORMATOS];
+    //anio de la fecha, para comprobar que el atlas lo tiene
+    int anio;
+
+    //el casillero que contiene la fecha y su degradado
+    final RectF casillero = new RectF();
+    LinearGradient shader;
+
+    //si la fecha lleva el anio
+    private boolean mConAnio;
+    //el formato con el que se pinta, lo cambia el hilo principal
+    private int mFormato = FORMATO_DIA_MES;
+
+    //clave del dia para el que se formateo la fecha, -1 si hay que volver a hacerlo
+    private int mClaveDia = -1;
+
+    /**
+     * coloca la fecha, se llama desde el onSurfaceChanged y obliga a recalcularla
+     * @param x posicion en X del principio de la fecha
+     * @param y posicion en Y de la linea base
+     * @param conAnio si la fecha lleva el anio
+     */
+    void configurar(float x, float y, boolean conAnio) {
+        xBlanca = x;
+        this.y = y;
+        mConAnio = conAnio;
+        invalidar();
+    }
+
+    /**
+     * obliga a recalcular la fecha en la siguiente actualizacion, por ejemplo al cambiar la
+     * zona horaria
+     */
+    void invalidar() {
+        mClaveDia = -1;
+    }
+
+    /**
+     * clave unica de un dia, con el anio y el dia del anio
+     */
+    static int claveDia(Calendar calendar) {
+        return calendar.get(Calendar.YEAR) * 1000 + calendar.get(Calendar.DAY_OF_YEAR);
+    }
+
+    /**
+     * formatea y mide la fecha si ha cambiado el dia
+     * @param calendar con la hora actual ya puesta
+     * @param claveDia la clave del dia actual
+     * @param tema con los colores del degradado del casillero
+     * @return true si la fecha ha cambiado
+     */
+    boolean actualizar(Calendar calendar, int claveDia, Tema tema, Paint pincelBlanco,
+                       Paint pincelCyan, Paint pincelCasillero) {
+        if (claveDia == mClaveDia) {
+            return false;
+        }
+        mClaveDia = claveDia;
+
+        //construimos la fecha con el dia del mes de hoy
+        String diaSemana = calendar.getDisplayName(Calendar.DAY_OF_WEEK, Calendar.SHORT,
+                Locale.ENGLISH);
+        String mes = calendar.getDisplayName(Calendar.MONTH, Calendar.SHORT, Locale.ENGLISH);
+        anio = calendar.get(Calendar.YEAR);
+        String diaMes = String.valueOf(calendar.get(Calendar.DAY_OF_MONTH));
+        blanca = diaSemana + " " + diaMes + " ";
+        if (mConAnio) {
+            //en dispositivos grandes tendra el anio
+            cyan = mes + " " + String.valueOf(anio);
+        } else {
+            //en dispositivos pequenios NO tendra el anio
+            cyan = mes;
+        }
+
+        //medimos los trozos una sola vez
+        float anchoBlanca = pincelBlanco.measureText(blanca);
+        float anchoCyan = pincelCyan.measureText(cyan);
+        xCyan = xBlanca + anchoBlanca;
+
+        //las palabras que pintaremos desde el atlas y donde empieza cada una
+        entradaDiaSemana = AtlasGlifos.DIAS_SEMANA
+                + calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY;
+        entradaDiaMes = AtlasGlifos.DIAS_MES + calendar.get(Calendar.DAY_OF_MONTH) - 1;
+        entradaMes = AtlasGlifos.MESES + calendar.get(Calendar.MONTH) - Calendar.JANUARY;
+        float anchoDiaSemana = pincelBlanco.measureText(diaSemana + " ");
+        xDiaMes[FORMATO_DIA_MES] = xBlanca + anchoDiaSemana;
+        xMes[FORMATO_DIA_MES] = xCyan;
+        xAnio[FORMATO_DIA_MES] = xCyan + pincelCyan.measureText(mes + " ");
+        //con el mes delante el dia va en blanco detras del mes
+        xMes[FORMATO_MES_DIA] = xBlanca + anchoDiaSemana;
+        xDiaMes[FORMATO_MES_DIA] = xMes[FORMATO_MES_DIA] + pincelCyan.measureText(mes + " ");
+        xAnio[FORMATO_MES_DIA] = xDiaMes[FORMATO_MES_DIA]
+                + pincelBlanco.measureText(diaMes + " ");
+
+        //tomamos las medidas ya con las dos fechas juntas y poder saber cuanto ocupan
+        float casilleroWidth = anchoBlanca + anchoCyan;
+        float casilleroHeigth = pincelBlanco.ascent() - pincelBlanco.descent();
+
+        //calculamos el casillero que va a contener a la fecha
+        casillero.set(
+                xBlanca - Disposicion.PADDING_FECHA,
+                y + Disposicion.PADDING_FECHA,
+                xBlanca + casilleroWidth + Disposicion.PADDING_FECHA,
+                y + casilleroHeigth + Disposicion.PADDING_FECHA
+        );
+
+        //creamos el shader para aplicarselo en este caso un gradiente lineal
+        shader = new LinearGradient(casillero.left, casillero.top,
+                casillero.right, casillero.bottom,
+                tema.colorResalte, tema.colorTexto, Shader.TileMode.MIRROR);
+        pincelCasillero.setShader(shader);
+        return true;
+    }
+
+    /**
+     * cambia el orden de la fecha, solo desde el hilo principal
+     * @param formato FORMATO_DIA_MES o FORMATO_MES_DIA
+     */
+    void setFormato(int formato) {
+        mFormato = formato;
+    }
+
+    /**
+     * pinta la fecha palabra a palabra desde el atlas
+     */
+    void dibujar(Canvas canvas, AtlasGlifos atlas) {
+        atlas.dibujar(canvas, entradaDiaSemana, xBlanca, y);
+        atlas.dibujar(canvas, entradaDiaMes, xDiaMes[mFormato], y);
+        atlas.dibujar(canvas, entradaMes, xMes[mFormato], y);
+        if (mConAnio) {
+            atlas.dibujar(canvas, AtlasGlifos.ANIO, xAnio[mFormato], y);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface;
+
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.BatteryManager;
+import android.os.Debug;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import wear.samsoft.es.simpleinfoface.core.FuenteTiempo;
+import wear.samsoft.es.simpleinfoface.core.GobernadorFrames;
+import wear.samsoft.es.simpleinfoface.core.HistorialBateria;
+import wear.samsoft.es.simpleinfoface.core.ListaDibujo;
+import wear.samsoft.es.simpleinfoface.core.MetricasFrame;
+import wear.samsoft.es.simpleinfoface.core.PreparadorFrame;
+import wear.samsoft.es.simpleinfoface.core.TablaDisposiciones;
+import wear.samsoft.es.simpleinfoface.core.Tema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Comprueba que un frame entero no crea objetos, con el mismo camino que el onDraw del motor:
+ * hora con FuenteTiempo, lectura del estado de la bateria, PreparadorFrame, grafica del
+ * historial, pintado de RecursosFrame en un Canvas y las metricas del frame y del gobernador.
+ * Se cuentan los bytes que reserva el hilo durante miles de frames, que tienen que ser cero.
+ *
+ * Robolectric enlaza sus shadows y sus llamadas nativas la primera vez que se usan, y algunas
+ * lo hacen tarde y reservan unos bytes una sola vez. Por eso los frames medidos se repiten en
+ * varias rondas con las mismas horas: una reserva de la caratula sale en todas las rondas y
+ * una de Robolectric solo en alguna, asi que al menos una ronda tiene que dar cero.
+ *
+ * El test de face-core AsignacionesTest cubre solo la preparacion, pero con muchos mas frames.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34, manifest = Config.NONE)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class AsignacionesFrameTest {
+
+    private static final TimeZone ZONA = TimeZone.getTimeZone("Europe/Madrid");
+    private static final int TAMANIO = 320;
+    private static final int FRAMES = 1000;
+    private static final int FRAMES_CALENTAMIENTO = 2000;
+    private static final int RONDAS = 5;
+    private static final int NIVEL_BATERIA = 73;
+
+    //2015-10-24 23:50 en Madrid, los frames cruzan la medianoche
+    private static final long ANTES_MEDIANOCHE = 1445723400000L;
+    //2015-10-25 00:00 en Madrid, los minutos de ambiente cruzan el cambio a horario de invierno
+    private static final long ANTES_CAMBIO_HORA = 1445724000000L;
+
+    @Rule
+    public TemporaryFolder mCarpeta = new TemporaryFolder();
+
+    private com.sun.management.ThreadMXBean mHilos;
+    private long mId;
+
+    private CacheBitmaps mCacheBitmaps;
+    private PoolRecursos mPoolRecursos;
+    private RecursosFrame mRecursos;
+    private final ListaDibujo mLista = new ListaDibujo();
+    private PreparadorFrame mPreparador;
+    private final FuenteTiempo mFuente = new FuenteTiempo(ZONA);
+    private final MetricasFrame mMetricas = new MetricasFrame();
+    private GobernadorFrames mGobernador;
+    private ProveedorBateria mBateria;
+    private final HistorialBateria mHistorial = new HistorialBateria();
+    private final float[] mLineas = new float[HistorialBateria.PUNTOS * 4];
+    private int mLongitudLineas;
+    private long mHistorialHasta;
+    private Canvas mCanvas;
+
+    @Before
+    public void preparar() throws IOException {
+        //solo las JVM de HotSpot cuentan lo que reserva cada hilo
+        assumeTrue(ManagementFactory.getThreadMXBean()
+                instanceof com.sun.management.ThreadMXBean);
+        mHilos = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(mHilos.isThreadAllocatedMemorySupported());
+        mHilos.setThreadAllocatedMemoryEnabled(true);
+        mId = Thread.currentThread().getId();
+
+        //los recursos como los prepara el hilo de preparacion
+        mCacheBitmaps = new CacheBitmaps(64L * 1024 * 1024);
+        mPoolRecursos = new PoolRecursos(mCacheBitmaps);
+        PreparadorRecursos preparadorRecursos = new PreparadorRecursos(mCacheBitmaps,
+                mPoolRecursos, new CachePixeles(mCarpeta.newFolder("pixeles")),
+                new TablaDisposiciones(), new File(mCarpeta.getRoot(), "disposiciones.bin"));
+        mRecursos = preparadorRecursos.preparar(new RecursosFrame.Peticion(TAMANIO, TAMANIO,
+                true, 0, ANTES_MEDIANOCHE, ZONA, true, true, Tema.CYAN));
+        mPreparador = new PreparadorFrame(mRecursos.geometria, mLista);
+        mGobernador = new GobernadorFrames(ANTES_MEDIANOCHE);
+        mCanvas = new Canvas(Bitmap.createBitmap(TAMANIO, TAMANIO, Bitmap.Config.ARGB_8888));
+
+        //la bateria llega por el broadcast como en el reloj
+        mBateria = new ProveedorBateria(RuntimeEnvironment.getApplication(),
+                new ProveedorBateria.Oyente() {
+                    @Override
+                    public void onBateriaCambiada(boolean cambiaNivel, boolean cambiaCarga) {
+                    }
+                });
+        Intent intent = new Intent(Intent.ACTION_BATTERY_CHANGED);
+        intent.putExtra(BatteryManager.EXTRA_LEVEL, NIVEL_BATERIA);
+        intent.putExtra(BatteryManager.EXTRA_SCALE, 100);
+        mBateria.onReceive(RuntimeEnvironment.getApplication(), intent);
+
+        //un dia de muestras, la grafica se recalcula cada vez que cambia su paso
+        for (int i = 0; i <= 96; i++) {
+            mHistorial.anadir(ANTES_MEDIANOCHE - (96 - i) * 15L * 60 * 1000,
+                    95 - i * (95 - NIVEL_BATERIA) / 96, false);
+        }
+    }
+
+    @Test
+    public void interactivoSinAsignaciones() {
+        mGobernador.elegir(NIVEL_BATERIA, false, false, ANTES_MEDIANOCHE);
+        mPreparador.setSegundos(true);
+        assertEquals(0L, medir(ANTES_MEDIANOCHE, 1000L, false));
+    }
+
+    @Test
+    public void interactivoSuaveSinAsignaciones() {
+        //a 60 frames por segundo el arco de los segundos cambia en casi todos
+        mGobernador.elegir(NIVEL_BATERIA, true, false, ANTES_MEDIANOCHE);
+        mPreparador.setSegundos(true);
+        assertEquals(0L, medir(ANTES_MEDIANOCHE, 16L, false));
+    }
+
+    @Test
+    public void ahorroSinAsignaciones() {
+        mGobernador.elegir(GobernadorFrames.UMBRAL_AHORRO, false, false, ANTES_MEDIANOCHE);
+        mPreparador.setSegundos(false);
+        assertEquals(0L, medir(ANTES_MEDIANOCHE, 60000L, false));
+    }
+
+    @Test
+    public void ambienteSinAsignaciones() {
+        mGobernador.elegir(NIVEL_BATERIA, false, true, ANTES_CAMBIO_HORA);
+        mPreparador.setProteccionQuemado(true);
+        assertEquals(0L, medir(ANTES_CAMBIO_HORA, 60000L, true));
+    }
+
+    /**
+     * pinta los frames de calentamiento y despues las rondas medidas, avanzando paso en cada
+     * frame
+     * @return los bytes reservados por la ronda que menos ha reservado, menos lo que reserva
+     * la medida
+     */
+    private long medir(long desde, long paso, boolean ambiente) {
+        long ahora = desde;
+        for (int i = 0; i < FRAMES_CALENTAMIENTO; i++) {
+            ahora = frame(ahora + paso, ambiente);
+        }
+        //lo que reserva la propia medida, para descontarlo
+        long base = mHilos.getThreadAllocatedBytes(mId);
+        long vacio = mHilos.getThreadAllocatedBytes(mId) - base;
+
+        long minimo = Long.MAX_VALUE;
+        for (int ronda = 0; ronda < RONDAS && minimo != 0; ronda++) {
+            //volvemos al principio para que cada ronda pase por los mismos cambios
+            ahora = desde;
+            mLista.invalidar();
+            mHistorialHasta = 0;
+            long inicio = mHilos.getThreadAllocatedBytes(mId);
+            for (int i = 0; i < FRAMES; i++) {
+                ahora = frame(ahora + paso, ambiente);
+            }
+            long fin = mHilos.getThreadAllocatedBytes(mId);
+            minimo = Math.min(minimo, fin - inicio - vacio);
+        }
+        mRecursos.liberar(mPoolRecursos);
+        return minimo;
+    }
+
+    /**
+     * lo mismo que hace el motor en prepararFrame y onDraw
+     */
+    private long frame(long ahora, boolean ambiente) {
+        mMetricas.empezarFrame(System.nanoTime());
+        long cpuInicio = Debug.threadCpuTimeNanos();
+        mCacheBitmaps.nuevoFrame();
+
+        mFuente.actualizar(ahora);
+        int nivel = ProveedorBateria.nivel(mBateria.getEstado());
+        mPreparador.preparar(mFuente, ahora, ambiente, mRecursos.dia, nivel,
+                mRecursos.disposicion);
+        if (ahora >= mHistorialHasta) {
+            long pasoHistorial = HistorialBateria.paso(HistorialBateria.VISTA_DIA);
+            mHistorialHasta = (ahora / pasoHistorial + 1) * pasoHistorial;
+            float[] r = mRecursos.disposicion.historialBateria;
+            mLongitudLineas = mHistorial.lineas(HistorialBateria.VISTA_DIA, ahora,
+                    r[0], r[1], r[2], r[3], mLineas);
+        }
+
+        if (ambiente) {
+            mRecursos.dibujarAmbiente(mCanvas, mPreparador);
+        } else {
+            mRecursos.dibujar(mCanvas, mPreparador, nivel, mGobernador.conSegundos(),
+                    mGobernador.conBrillo(), mLineas, mLongitudLineas, mMetricas);
+        }
+        long fin = System.nanoTime();
+        mMetricas.marcarFase(MetricasFrame.FASE_MANECILLAS, fin);
+        mMetricas.terminarFrame(fin, mGobernador.conSegundos()
+                ? MetricasFrame.PLAZO_VSYNC_NANOS : TimeUnit.MINUTES.toNanos(1));
+        mGobernador.registrarFrame(Debug.threadCpuTimeNanos() - cpuInicio);
+        return ahora;
+    }
+}
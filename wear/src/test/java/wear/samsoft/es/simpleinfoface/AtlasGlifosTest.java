@@ -0,0 +1,224 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import wear.samsoft.es.simpleinfoface.core.Disposicion;
+import wear.samsoft.es.simpleinfoface.core.Tema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Comprueba que los textos del atlas salen igual que con drawText: cada entrada avanza lo
+ * mismo que measureText de su texto, copiada a una posicion entera pinta los mismos pixeles
+ * que drawText en esa posicion, y las palabras de la fecha caen, en los dos formatos, donde
+ * las colocaria drawText al pintar la fecha entera.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34, manifest = Config.NONE)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class AtlasGlifosTest {
+
+    private static final int[] TAMANIOS = {280, 320, 454};
+    private static final int ANIO = 2015;
+
+    //el atlas se copia al pixel, la palabra puede moverse hasta medio pixel
+    private static final float ERROR_POSICION = 0.5f;
+    //diferencia que se admite en cada canal al comparar una entrada con drawText
+    private static final int TOLERANCIA_CANAL = 2;
+
+    //posicion entera de la linea base donde pintamos cada entrada al compararla
+    private static final int X = 16;
+    private static final int Y_BASE = 48;
+
+    @Test
+    public void avances() {
+        for (int tamanio : TAMANIOS) {
+            PaqueteRecursos paquete = paquete(tamanio);
+            String[] textos = textos();
+            Paint[] pinceles = pinceles(paquete);
+            for (int i = 0; i < textos.length; i++) {
+                assertEquals(tamanio + " " + textos[i], pinceles[i].measureText(textos[i]),
+                        paquete.atlas.avance(i), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void pixeles() {
+        for (int tamanio : TAMANIOS) {
+            PaqueteRecursos paquete = paquete(tamanio);
+            String[] textos = textos();
+            Paint[] pinceles = pinceles(paquete);
+            for (int i = 0; i < textos.length; i++) {
+                int w = (int) Math.ceil(paquete.atlas.avance(i)) + X * 2;
+                int h = Y_BASE * 2;
+                Bitmap atlas = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+                paquete.atlas.dibujar(new Canvas(atlas), i, X, Y_BASE);
+                Bitmap texto = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+                new Canvas(texto).drawText(textos[i], X, Y_BASE, pinceles[i]);
+                int diferencia = diferencia(atlas, texto);
+                assertTrue(tamanio + " \"" + textos[i] + "\" se diferencia en " + diferencia,
+                        diferencia <= TOLERANCIA_CANAL);
+            }
+        }
+    }
+
+    @Test
+    public void posicionesDeLaFecha() {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("Europe/Madrid"));
+        for (int tamanio : TAMANIOS) {
+            PaqueteRecursos paquete = paquete(tamanio);
+            Disposicion disposicion = disposicion(tamanio);
+            Paint blanco = paquete.pincelBlancoSolido;
+            Paint cyan = paquete.pincelCyanSolido;
+            for (int conAnio = 0; conAnio < 2; conAnio++) {
+                TextoFecha fecha = new TextoFecha();
+                fecha.configurar(disposicion.offsetXTextoFecha, disposicion.offsetYTextoFecha,
+                        conAnio == 1);
+                //todos los dias del anio, con todos los dias de la semana, del mes y meses
+                calendar.clear();
+                calendar.set(ANIO, Calendar.JANUARY, 1, 12, 0);
+                for (int dia = 0; dia < 365; dia++) {
+                    fecha.actualizar(calendar, TextoFecha.claveDia(calendar), Tema.CYAN,
+                            blanco, cyan, new Paint());
+                    comprobarFecha(fecha, calendar, blanco, cyan);
+                    calendar.add(Calendar.DAY_OF_MONTH, 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * compara donde empieza cada palabra con measureText de lo que tiene delante en la fecha
+     * entera, como la pintaba drawText: "Sat 17 " en blanco y "Oct 2015" en cyan detras, o
+     * "Sat Oct 17 2015" en el otro formato
+     */
+    private static void comprobarFecha(TextoFecha fecha, Calendar calendar, Paint blanco,
+                                       Paint cyan) {
+        String diaSemana = calendar.getDisplayName(Calendar.DAY_OF_WEEK, Calendar.SHORT,
+                Locale.ENGLISH) + " ";
+        String diaMes = calendar.get(Calendar.DAY_OF_MONTH) + " ";
+        String mes = calendar.getDisplayName(Calendar.MONTH, Calendar.SHORT,
+                Locale.ENGLISH) + " ";
+        String donde = diaSemana + diaMes + mes;
+
+        assertEquals(donde, fecha.xBlanca + blanco.measureText(diaSemana + diaMes), fecha.xCyan,
+                ERROR_POSICION);
+
+        int f = TextoFecha.FORMATO_DIA_MES;
+        assertEquals(donde, fecha.xBlanca + blanco.measureText(diaSemana), fecha.xDiaMes[f],
+                ERROR_POSICION);
+        assertEquals(donde, fecha.xBlanca + blanco.measureText(diaSemana + diaMes),
+                fecha.xMes[f], ERROR_POSICION);
+        assertEquals(donde, fecha.xCyan + cyan.measureText(mes), fecha.xAnio[f],
+                ERROR_POSICION);
+
+        f = TextoFecha.FORMATO_MES_DIA;
+        assertEquals(donde, fecha.xBlanca + blanco.measureText(diaSemana), fecha.xMes[f],
+                ERROR_POSICION);
+        assertEquals(donde, fecha.xBlanca + blanco.measureText(diaSemana + mes),
+                fecha.xDiaMes[f], ERROR_POSICION);
+        assertEquals(donde, fecha.xBlanca + blanco.measureText(diaSemana + mes + diaMes),
+                fecha.xAnio[f], ERROR_POSICION);
+    }
+
+    private static Disposicion disposicion(int tamanio) {
+        Disposicion disposicion = new Disposicion();
+        disposicion.calcular(tamanio, tamanio, true, 0);
+        return disposicion;
+    }
+
+    /**
+     * los pinceles de una pantalla con el atlas ya construido, como en PreparadorRecursos
+     */
+    private static PaqueteRecursos paquete(int tamanio) {
+        PoolRecursos pool = new PoolRecursos(new CacheBitmaps(16L * 1024 * 1024));
+        PaqueteRecursos paquete = pool.obtener(disposicion(tamanio), ANIO, Tema.CYAN);
+        paquete.atlas.construir(paquete.pincelInfoBat, paquete.pincelBlancoSolido,
+                paquete.pincelCyanSolido, ANIO);
+        return paquete;
+    }
+
+    /**
+     * los textos de cada entrada del atlas en su orden
+     */
+    private static String[] textos() {
+        String[] textos = new String[AtlasGlifos.ANIO + 1];
+        for (int i = 0; i <= 100; i++) {
+            textos[AtlasGlifos.PORCENTAJES + i] = i + "%";
+        }
+        String[] diasSemana = {"Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"};
+        System.arraycopy(diasSemana, 0, textos, AtlasGlifos.DIAS_SEMANA, 7);
+        for (int i = 0; i < 31; i++) {
+            textos[AtlasGlifos.DIAS_MES + i] = String.valueOf(i + 1);
+        }
+        String[] meses = {
+                "Jan", "Feb", "Mar", "Apr", "May", "Jun",
+                "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+        };
+        System.arraycopy(meses, 0, textos, AtlasGlifos.MESES, 12);
+        textos[AtlasGlifos.ANIO] = String.valueOf(ANIO);
+        return textos;
+    }
+
+    private static Paint[] pinceles(PaqueteRecursos paquete) {
+        Paint[] pinceles = new Paint[AtlasGlifos.ANIO + 1];
+        for (int i = 0; i < pinceles.length; i++) {
+            if (i < AtlasGlifos.DIAS_SEMANA) {
+                pinceles[i] = paquete.pincelInfoBat;
+            } else if (i < AtlasGlifos.MESES) {
+                pinceles[i] = paquete.pincelBlancoSolido;
+            } else {
+                pinceles[i] = paquete.pincelCyanSolido;
+            }
+        }
+        return pinceles;
+    }
+
+    /**
+     * @return la mayor diferencia en un canal entre los dos bitmaps
+     */
+    private static int diferencia(Bitmap a, Bitmap b) {
+        int max = 0;
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                int pa = a.getPixel(x, y);
+                int pb = b.getPixel(x, y);
+                for (int desplazamiento = 0; desplazamiento < 32; desplazamiento += 8) {
+                    int ca = (pa >>> desplazamiento) & 0xff;
+                    int cb = (pb >>> desplazamiento) & 0xff;
+                    max = Math.max(max, Math.abs(ca - cb));
+                }
+            }
+        }
+        return max;
+    }
+}
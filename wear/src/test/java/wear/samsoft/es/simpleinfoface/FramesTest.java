@@ -0,0 +1,434 @@
+/**Copyright [2015] [SamSoft.es]
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ **/
+
+package wear.samsoft.es.simpleinfoface;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import wear.samsoft.es.simpleinfoface.core.FuenteTiempo;
+import wear.samsoft.es.simpleinfoface.core.HistorialBateria;
+import wear.samsoft.es.simpleinfoface.core.ListaDibujo;
+import wear.samsoft.es.simpleinfoface.core.MetricasFrame;
+import wear.samsoft.es.simpleinfoface.core.PreparadorFrame;
+import wear.samsoft.es.simpleinfoface.core.TablaDisposiciones;
+import wear.samsoft.es.simpleinfoface.core.Tema;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Pinta frames de verdad fuera del reloj y los compara con las imagenes de referencia de
+ * golden/. Recorre los tamanios de pantalla habituales, redondos y cuadrados, en modo
+ * interactivo, interactivo en ahorro de bateria (sin segundos ni brillo) y ambiente (normal, y
+ * con bajo bit y proteccion de quemado) a unas horas fijas. Cada frame sale por el mismo
+ * camino que en el motor: PreparadorRecursos como al cambiar la superficie, PreparadorFrame y
+ * RecursosFrame.dibujar como en el onDraw, con el pintado nativo de Robolectric.
+ *
+ * La comparacion admite una pequenia diferencia por canal y unos pocos pixeles distintos, lo
+ * que puede cambiar el suavizado de una version a otra del pintado. Los frames que no
+ * coinciden se dejan en build/frames para mirarlos. Despues se mide cuanto tarda en pintarse
+ * un frame en cada escenario. Ademas comprueba que el frame en el que cambia el tema sale
+ * igual que uno pintado desde cero con el tema nuevo.
+ *
+ * Las referencias de golden/ no salen de gradle. Robolectric 4.11.1 con sdk = 34 necesita un
+ * JDK 17, y el AGP 1.5.0 de este proyecto (Gradle 2.x, buildTools 23.0.0 rc3, compileSdk 22)
+ * no funciona con JDK 17, asi que :wear:testDebugUnitTest no puede lanzar este test ni los
+ * otros de Robolectric (AtlasGlifosTest y AsignacionesFrameTest). Se generaron, y los tres se
+ * pasan, con JUnitCore directamente:
+ * - Temurin 17.0.9, con el directorio wear como directorio de trabajo
+ * - robolectric 4.11.1 con sus dependencias de Maven Central y androidx.test:monitor de
+ *   maven.google.com, android-all-instrumented 14-robolectric-10818077-i4 y junit 4.13.2
+ * - face-core y las clases de wear que no usan la libreria de wearable (todas menos
+ *   ServicioMain y ReceptorTemas) compiladas con javac contra ese classpath
+ *
+ * java -cp src/test/resources:<tests>:<wear>:<face-core>:<robolectric>
+ *     org.junit.runner.JUnitCore wear.samsoft.es.simpleinfoface.FramesTest
+ *
+ * y con -DgenerarFrames=src/test/resources/golden delante de -cp para escribir las
+ * referencias. El pintado nativo de otra version de Robolectric o de android-all puede
+ * suavizar distinto, las referencias solo valen con estas versiones.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34, manifest = Config.NONE)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class FramesTest {
+
+    private static final String REFERENCIAS = "/golden/";
+    //con esta propiedad se escriben las referencias en su carpeta en vez de comparar
+    private static final String GENERAR = "generarFrames";
+
+    private static final int[] TAMANIOS = {280, 320, 360, 400, 454};
+    private static final String[] MODOS = {
+            "interactivo", "ahorro", "ambiente", "ambienteQuemado"
+    };
+
+    //todas las horas en la misma zona para que las referencias no dependan de la maquina
+    private static final TimeZone ZONA = TimeZone.getTimeZone("Europe/Madrid");
+
+    //horas de los frames: una normal, justo antes y despues del cambio de hora de octubre,
+    //el cambio de anio y las 12 en punto. Todos los escenarios se pintan a la primera y la
+    //pantalla mas comun a todas
+    private static final long[] INSTANTES = {
+            1444464517250L,//2015-10-10 10:08:37.250
+            1445734799000L,//2015-10-25 02:59:59 de verano
+            1445734800000L,//2015-10-25 02:00:00 de invierno
+            1451602799500L,//2015-12-31 23:59:59.500
+            1451646000000L,//2016-01-01 12:00:00
+    };
+    private static final int TAMANIO_COMPLETO = 320;
+
+    private static final int NIVEL_BATERIA = 73;
+
+    //diferencia que se admite en cada canal y fraccion de pixeles que pueden pasarse
+    private static final int TOLERANCIA_CANAL = 12;
+    private static final double TOLERANCIA_PIXELES = 0.002;
+
+    //frames por escenario al medir, despues de otros tantos de calentamiento
+    private static final int FRAMES_MEDIDA = 60;
+
+    @Rule
+    public TemporaryFolder mCarpeta = new TemporaryFolder();
+
+    private CacheBitmaps mCacheBitmaps;
+    private PoolRecursos mPoolRecursos;
+    private PreparadorRecursos mPreparadorRecursos;
+
+    @Before
+    public void preparar() throws IOException {
+        mCacheBitmaps = new CacheBitmaps(64L * 1024 * 1024);
+        mPoolRecursos = new PoolRecursos(mCacheBitmaps);
+        mPreparadorRecursos = new PreparadorRecursos(mCacheBitmaps, mPoolRecursos,
+                new CachePixeles(mCarpeta.newFolder("pixeles")), new TablaDisposiciones(),
+                new File(mCarpeta.getRoot(), "disposiciones.bin"));
+    }
+
+    @Test
+    public void frames() throws IOException {
+        String generar = System.getProperty(GENERAR);
+        File salida = new File(generar != null ? generar : "build/frames");
+        List<String> fallos = new ArrayList<String>();
+        List<String> tiempos = new ArrayList<String>();
+        int comparados = 0;
+        for (int tamanio : TAMANIOS) {
+            for (int redonda = 0; redonda < 2; redonda++) {
+                for (String modo : MODOS) {
+                    Escenario escenario = new Escenario(tamanio, redonda == 1, modo);
+                    int instantes = tamanio == TAMANIO_COMPLETO && redonda == 1
+                            ? INSTANTES.length : 1;
+                    for (int i = 0; i < instantes; i++) {
+                        String nombre = escenario.nombre() + "_" + INSTANTES[i];
+                        Bitmap frame = escenario.pintar(INSTANTES[i]);
+                        if (generar != null) {
+                            escribir(frame, new File(salida, nombre + ".png"));
+                        } else {
+                            String fallo = comparar(nombre, frame, salida);
+                            if (fallo != null) {
+                                fallos.add(fallo);
+                            }
+                        }
+                        comparados++;
+                    }
+                    tiempos.add(escenario.medir());
+                    escenario.liberar();
+                }
+            }
+        }
+        for (String tiempo : tiempos) {
+            System.out.println(tiempo);
+        }
+        if (generar != null) {
+            System.out.println("generadas " + comparados + " referencias en " + salida);
+            return;
+        }
+        System.out.println("frames comparados=" + comparados + " distintos=" + fallos.size());
+        assertTrue(fallos.size() + " frames distintos de su referencia:\n"
+                + join(fallos), fallos.isEmpty());
+    }
+
+    /**
+     * Cambia de tema como el motor cuando llega otro de la app del movil: los recursos de cada
+     * tema se preparan antes, como en el hilo de preparacion, y el frame del cambio solo toma
+     * los otros y pinta la lista entera. Cada frame con el tema nuevo tiene que salir igual que
+     * uno pintado desde cero con ese tema. Lo que cuesta el cambio se mide en TemaBenchmark.
+     */
+    @Test
+    public void cambioDeTema() {
+        long instante = INSTANTES[0];
+        Tema[] temas = Tema.TEMAS;
+        RecursosFrame[] recursos = new RecursosFrame[temas.length];
+        for (int i = 0; i < temas.length; i++) {
+            recursos[i] = mPreparadorRecursos.preparar(new RecursosFrame.Peticion(
+                    TAMANIO_COMPLETO, TAMANIO_COMPLETO, true, 0, instante, ZONA, false, false,
+                    temas[i]));
+        }
+
+        Escenario escenario = new Escenario(TAMANIO_COMPLETO, true, "interactivo");
+        escenario.llenarHistorial(instante);
+        escenario.tomar(recursos[0]);
+        escenario.frame(instante);
+        List<String> fallos = new ArrayList<String>();
+        //dos vueltas por todos los temas, con un frame sin cambio entre medias
+        for (int i = 1; i <= temas.length * 2; i++) {
+            int actual = i % temas.length;
+            escenario.frame(instante += 1000L);
+            escenario.tomar(recursos[actual]);
+            escenario.frame(instante += 1000L);
+
+            Escenario desdeCero = new Escenario(TAMANIO_COMPLETO, true, "interactivo");
+            desdeCero.pintar(instante, temas[actual]);
+            if (!desdeCero.bitmap.sameAs(escenario.bitmap)) {
+                fallos.add(temas[actual].id + " a las " + instante);
+            }
+            desdeCero.liberar();
+        }
+        for (RecursosFrame r : recursos) {
+            r.liberar(mPoolRecursos);
+        }
+        assertTrue("frames con cambio de tema distintos de uno pintado desde cero:\n"
+                + join(fallos), fallos.isEmpty());
+    }
+
+    /**
+     * compara el frame con su referencia
+     * @return null si coincide, o por que no coincide
+     */
+    private static String comparar(String nombre, Bitmap frame, File salida) throws IOException {
+        InputStream in = FramesTest.class.getResourceAsStream(REFERENCIAS + nombre + ".png");
+        if (in == null) {
+            fail("no hay referencia para " + nombre + ", se generan con -D" + GENERAR
+                    + "=src/test/resources/golden como cuenta FramesTest");
+        }
+        Bitmap referencia;
+        try {
+            referencia = BitmapFactory.decodeStream(in);
+        } finally {
+            in.close();
+        }
+        String fallo = null;
+        if (referencia.getWidth() != frame.getWidth()
+                || referencia.getHeight() != frame.getHeight()) {
+            fallo = nombre + " mide " + frame.getWidth() + "x" + frame.getHeight()
+                    + " y la referencia " + referencia.getWidth() + "x" + referencia.getHeight();
+        } else {
+            int w = frame.getWidth();
+            int h = frame.getHeight();
+            int[] esperados = new int[w * h];
+            int[] pintados = new int[w * h];
+            referencia.getPixels(esperados, 0, w, 0, 0, w, h);
+            frame.getPixels(pintados, 0, w, 0, 0, w, h);
+            int distintos = 0;
+            int maxDiferencia = 0;
+            for (int i = 0; i < esperados.length; i++) {
+                int diferencia = diferencia(esperados[i], pintados[i]);
+                maxDiferencia = Math.max(maxDiferencia, diferencia);
+                if (diferencia > TOLERANCIA_CANAL) {
+                    distintos++;
+                }
+            }
+            if (distintos > esperados.length * TOLERANCIA_PIXELES) {
+                fallo = String.format(Locale.US, "%s %d pixeles distintos (%.2f%%), hasta %d",
+                        nombre, distintos, distintos * 100.0 / esperados.length, maxDiferencia);
+            }
+        }
+        if (fallo != null) {
+            //lo dejamos para compararlo a mano con la referencia
+            escribir(frame, new File(salida, nombre + ".png"));
+        }
+        return fallo;
+    }
+
+    /**
+     * la mayor diferencia entre los canales de dos colores
+     */
+    private static int diferencia(int a, int b) {
+        int d = Math.abs(Color.alpha(a) - Color.alpha(b));
+        d = Math.max(d, Math.abs(Color.red(a) - Color.red(b)));
+        d = Math.max(d, Math.abs(Color.green(a) - Color.green(b)));
+        return Math.max(d, Math.abs(Color.blue(a) - Color.blue(b)));
+    }
+
+    private static void escribir(Bitmap frame, File fichero) throws IOException {
+        File carpeta = fichero.getParentFile();
+        if (!carpeta.isDirectory() && !carpeta.mkdirs()) {
+            throw new IOException("no se puede crear " + carpeta);
+        }
+        OutputStream out = new FileOutputStream(fichero);
+        try {
+            frame.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String join(List<String> lineas) {
+        StringBuilder sb = new StringBuilder();
+        for (String linea : lineas) {
+            sb.append(linea).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * una pantalla en un modo, pintada como la pintaria el motor
+     */
+    private class Escenario {
+        final int tamanio;
+        final boolean redonda;
+        final String modo;
+        final boolean ambiente;
+        final boolean ahorro;
+        //en las pantallas con proteccion de quemado el ambiente tambien suele ser de bajo bit
+        final boolean quemado;
+
+        final ListaDibujo lista = new ListaDibujo();
+        final FuenteTiempo fuente = new FuenteTiempo(ZONA);
+        final MetricasFrame metricas = new MetricasFrame();
+        HistorialBateria historial;
+        final float[] lineas = new float[HistorialBateria.PUNTOS * 4];
+        int longitudLineas;
+        PreparadorFrame preparador;
+        RecursosFrame recursos;
+        Bitmap bitmap;
+        Canvas canvas;
+        long ultimo;
+
+        Escenario(int tamanio, boolean redonda, String modo) {
+            this.tamanio = tamanio;
+            this.redonda = redonda;
+            this.modo = modo;
+            ambiente = modo.startsWith("ambiente");
+            ahorro = "ahorro".equals(modo);
+            quemado = "ambienteQuemado".equals(modo);
+            bitmap = Bitmap.createBitmap(tamanio, tamanio, Bitmap.Config.ARGB_8888);
+            canvas = new Canvas(bitmap);
+        }
+
+        /**
+         * prepara los recursos para el instante como al cambiar la superficie y pinta el
+         * primer frame entero
+         */
+        Bitmap pintar(long instante) {
+            return pintar(instante, Tema.CYAN);
+        }
+
+        Bitmap pintar(long instante, Tema tema) {
+            liberar();
+            llenarHistorial(instante);
+            tomar(mPreparadorRecursos.preparar(new RecursosFrame.Peticion(tamanio,
+                    tamanio, redonda, 0, instante, ZONA, quemado, quemado, tema)));
+            frame(instante);
+            return bitmap;
+        }
+
+        /**
+         * pasa a pintar con otros recursos ya preparados, como el motor al tomarlos del hilo
+         * de preparacion: la geometria nueva y la lista entera en el siguiente frame
+         */
+        void tomar(RecursosFrame otros) {
+            recursos = otros;
+            if (preparador == null) {
+                preparador = new PreparadorFrame(otros.geometria, lista);
+                preparador.setSegundos(!ahorro);
+                preparador.setProteccionQuemado(quemado);
+            } else {
+                preparador.setGeometria(otros.geometria);
+            }
+            lista.invalidar();
+        }
+
+        /**
+         * tiempo medio de preparar y pintar un frame, avanzando un segundo por frame en
+         * interactivo y un minuto en ahorro y ambiente como hace el motor
+         */
+        String medir() {
+            long paso = ambiente || ahorro ? 60000L : 1000L;
+            long instante = ultimo;
+            for (int i = 0; i < FRAMES_MEDIDA; i++) {
+                frame(instante += paso);
+            }
+            long inicio = System.nanoTime();
+            for (int i = 0; i < FRAMES_MEDIDA; i++) {
+                frame(instante += paso);
+            }
+            long nanos = System.nanoTime() - inicio;
+            return String.format(Locale.US, "%-28s %8.3f ms/frame",
+                    nombre().replace('_', ' '), nanos / 1e6 / FRAMES_MEDIDA);
+        }
+
+        void frame(long instante) {
+            ultimo = instante;
+            fuente.actualizar(instante);
+            preparador.preparar(fuente, instante, ambiente, recursos.dia, NIVEL_BATERIA,
+                    recursos.disposicion);
+            metricas.empezarFrame(System.nanoTime());
+            if (ambiente) {
+                recursos.dibujarAmbiente(canvas, preparador);
+                return;
+            }
+            float[] r = recursos.disposicion.historialBateria;
+            longitudLineas = historial.lineas(HistorialBateria.VISTA_DIA, instante,
+                    r[0], r[1], r[2], r[3], lineas);
+            recursos.dibujar(canvas, preparador, NIVEL_BATERIA, !ahorro, !ahorro, lineas,
+                    longitudLineas, metricas);
+        }
+
+        /**
+         * un dia de bateria que baja hasta el nivel del frame, con una carga por la noche
+         */
+        void llenarHistorial(long instante) {
+            historial = new HistorialBateria();
+            long desde = instante - 24L * 60 * 60 * 1000;
+            //una muestra cada cuarto de hora, tres horas cargando y el resto gastando
+            for (int i = 0; i <= 96; i++) {
+                boolean cargando = i < 12;
+                int nivel = cargando ? 40 + i * 5 : 95 - (i - 12) * (95 - NIVEL_BATERIA) / 84;
+                historial.anadir(desde + i * 15L * 60 * 1000, nivel, cargando);
+            }
+        }
+
+        void liberar() {
+            if (recursos != null) {
+                recursos.liberar(mPoolRecursos);
+                recursos = null;
+            }
+        }
+
+        String nombre() {
+            return tamanio + "_" + (redonda ? "redonda" : "cuadrada") + "_" + modo;
+        }
+    }
+}